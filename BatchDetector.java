@@ -0,0 +1,207 @@
+/**
+ * This class detects blobs in many images with one set of parameters in one
+ * JVM, so the JIT, the ImageIO plugins and the buffers are warmed up once.
+ * Images are handled by a pool of workers. Every worker keeps one Detector,
+ * which reuses its mask, disjoint sets and stats buffers from one image to
+ * the next whenever the size stays the same.
+ *
+ * A summary line with the blob count, the k largest blobs and the timings is
+ * written for every image, in the order the images were given.
+ */
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+public class BatchDetector {
+	private Color blobColor; // the color of the blob we are detecting
+	private int okDist; // the distance between blobColor and the pixel which
+	// "still counts" as the color
+	private int k; // the number of blobs to report per image
+	private int workers; // the number of images handled at once
+	private Connectivity connectivity = Connectivity.FOUR; // which pixels are neighbors
+	private ThreadLocal<Detector> detectors = new ThreadLocal<Detector>();
+
+	/**
+	 * @param blobColor
+	 *            the color of the blob to be detected
+	 * @param okDist
+	 *            the thresh hold from the color that is acceptable for a color
+	 *            considered the "same color" as the blobColor
+	 * @param k
+	 *            the number of blobs to report per image
+	 * @param workers
+	 *            the number of images handled at once
+	 */
+	public BatchDetector(Color blobColor, int okDist, int k, int workers) {
+		if (k < 1) {
+			throw new IllegalArgumentException("! Error: k should be greater than 0, current k=" + k);
+		}
+		if (workers < 1) {
+			throw new IllegalArgumentException("! Error: workers should be greater than 0, current workers=" + workers);
+		}
+		this.blobColor = blobColor;
+		this.okDist = okDist;
+		this.k = k;
+		this.workers = workers;
+	}
+
+	/**
+	 * @param connectivity
+	 *            which pixels count as neighbors in the next call to run(),
+	 *            FOUR by default
+	 */
+	public void setConnectivity(Connectivity connectivity) {
+		if (connectivity == null) {
+			throw new NullPointerException();
+		}
+		this.connectivity = connectivity;
+	}
+
+	/**
+	 * @param source
+	 *            a directory, or @file where file lists one image per line
+	 * @return the images to process
+	 * @throws IOException
+	 *             if the list cannot be read
+	 */
+	public static List<File> listImages(String source) throws IOException {
+		ArrayList<File> files = new ArrayList<File>();
+		if (source.startsWith("@")) {
+			BufferedReader reader = new BufferedReader(new FileReader(source.substring(1)));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (!line.trim().isEmpty()) {
+						files.add(new File(line.trim()));
+					}
+				}
+			} finally {
+				reader.close();
+			}
+			return files;
+		}
+
+		File[] entries = new File(source).listFiles();
+		if (entries == null) {
+			throw new IOException("Not a directory: " + source);
+		}
+		List<String> suffixes = Arrays.asList(ImageIO.getReaderFileSuffixes());
+		Arrays.sort(entries);
+		for (File entry : entries) {
+			String name = entry.getName();
+			int dot = name.lastIndexOf('.');
+			if (entry.isFile() && dot >= 0 && suffixes.contains(name.substring(dot + 1).toLowerCase())) {
+				files.add(entry);
+			}
+		}
+		return files;
+	}
+
+	/**
+	 * @param files
+	 *            the images to process
+	 * @param summary
+	 *            where the summary lines are written
+	 */
+	public void run(List<File> files, PrintStream summary) {
+		summary.println("file,width,height,blobs,decode_ms,detect_ms,largest");
+		long start = System.nanoTime();
+		ExecutorService pool = Executors.newFixedThreadPool(workers);
+		try {
+			ArrayList<Future<String>> results = new ArrayList<Future<String>>();
+			for (final File file : files) {
+				results.add(pool.submit(() -> process(file)));
+			}
+			for (int i = 0; i < results.size(); i++) {
+				try {
+					summary.println(results.get(i).get());
+				} catch (ExecutionException e) {
+					// the error goes in the last column, so every row has all of them
+					summary.println(csv(files.get(i).toString()) + ",,,,,," + quote("error: " + e.getCause()));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.err.printf("- %d images in %.2f s, %.2f images/s%n", files.size(), seconds, files.size() / seconds);
+	}
+
+	/**
+	 * @param file
+	 *            the image to process
+	 * @return the summary line of the image
+	 * @throws IOException
+	 *             if the image cannot be read
+	 */
+	private String process(File file) throws IOException {
+		long start = System.nanoTime();
+		BufferedImage image = ImageIO.read(file);
+		if (image == null) {
+			throw new IOException("No reader for " + file);
+		}
+		long decoded = System.nanoTime();
+
+		Detector detector = detectors.get();
+		if (detector == null) {
+			detector = new Detector(image, blobColor, okDist);
+			detectors.set(detector);
+		} else {
+			detector.setImage(image);
+		}
+		detector.setConnectivity(connectivity);
+		detector.detect();
+		List<Blob> blobs = detector.getBlobs(k);
+		long detected = System.nanoTime();
+
+		StringBuilder line = new StringBuilder();
+		line.append(csv(file.toString())).append(',').append(image.getWidth()).append(',').append(image.getHeight()).append(',')
+				.append(detector.getBlobCount()).append(',')
+				.append(String.format("%.1f,%.1f,", (decoded - start) / 1e6, (detected - decoded) / 1e6));
+		for (int i = 0; i < blobs.size(); i++) {
+			line.append(i == 0 ? "" : " ").append(blobs.get(i).getSize());
+		}
+		return line.toString();
+	}
+
+	/**
+	 * @param field
+	 *            a field of a summary line
+	 * @return the field, quoted if it holds a comma, a quote or a line break
+	 */
+	private static String csv(String field) {
+		for (int i = 0; i < field.length(); i++) {
+			char c = field.charAt(i);
+			if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+				return quote(field);
+			}
+		}
+		return field;
+	}
+
+	/**
+	 * @param field
+	 *            a field of a summary line
+	 * @return the field in quotes, with its quotes doubled and its line
+	 *         breaks turned into spaces so the row stays on one line
+	 */
+	private static String quote(String field) {
+		return '"' + field.replace("\"", "\"\"").replace('\r', ' ').replace('\n', ' ') + '"';
+	}
+}
@@ -0,0 +1,196 @@
+/**
+ * Times the parts of the detector on generated images (see SyntheticImages)
+ * and prints ns/pixel and bytes allocated/pixel for each, so they can be
+ * compared between releases.
+ *
+ * Usage: java -Xmx16g Benchmark [megapixels ...] (default 1 4)
+ *
+ * Every operation is run a few times to warm up the JIT before it is timed.
+ * Allocation is measured on the calling thread only, so for parallel
+ * operations it leaves out the worker threads.
+ */
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.concurrent.ForkJoinPool;
+
+public class Benchmark {
+	private static final int WARMUP_RUNS = 3;
+	private static final int RUNS = 5;
+	private static final int OK_DIST = 10;
+	private static final int K = 10;
+
+	/**
+	 * @param args
+	 *            the image sizes to run, in megapixels Main method
+	 */
+	public static void main(String[] args) {
+		double[] sizes = { 1, 4 };
+		if (args.length > 0) {
+			sizes = new double[args.length];
+			for (int i = 0; i < args.length; i++) {
+				sizes[i] = Double.parseDouble(args[i]);
+			}
+		}
+
+		System.out.printf("%-12s %8s %-28s %12s %12s%n", "image", "MP", "operation", "ns/pixel", "bytes/pixel");
+		for (double size : sizes) {
+			int side = (int) Math.sqrt(size * 1000000);
+			run("noise", size, SyntheticImages.noise(side, side, 1));
+			run("circles", size, SyntheticImages.circles(side, side, side / 4, 1));
+			run("checkerboard", size, SyntheticImages.checkerboard(side, side));
+			run("serpentine", size, SyntheticImages.serpentine(side, side));
+			run("full", size, SyntheticImages.full(side, side));
+		}
+	}
+
+	/**
+	 * @param name
+	 *            the name of the image
+	 * @param size
+	 *            the size of the image in megapixels
+	 * @param image
+	 *            the image
+	 */
+	private static void run(String name, double size, final BufferedImage image) {
+		final int pixels = image.getWidth() * image.getHeight();
+		final Detector detector = new Detector(image, SyntheticImages.BLOB_COLOR, OK_DIST);
+		final int threads = Runtime.getRuntime().availableProcessors();
+
+		measure(name, size, "thresh", pixels,
+				() -> Detector.threshMask(new RasterRows(image), SyntheticImages.BLOB_COLOR, OK_DIST));
+		// detect() labels the tiles with foreground (RasterLabeler.labelTiles)
+		measure(name, size, "detect tiles", pixels, () -> detector.detect());
+		detector.setConnectivity(Connectivity.EIGHT);
+		measure(name, size, "detect tiles 8-connected", pixels, () -> detector.detect());
+		detector.setConnectivity(Connectivity.FOUR);
+		measure(name, size, "rank top " + K, pixels, () -> detector.getBlobs(K));
+		detector.setRunLength(true);
+		measure(name, size, "detect run-length", pixels, () -> detector.detect());
+		measure(name, size, "rank top " + K + " run-length", pixels, () -> detector.getBlobs(K));
+		detector.setRunLength(false);
+		if (threads > 1) {
+			detector.setThreads(threads);
+			measure(name, size, "detect tiles " + threads + " threads", pixels, () -> detector.detect());
+			detector.setThreads(1);
+		}
+
+		// the whole-picture labelers MultiColorDetector uses
+		final MaskRows mask = new MaskRows(Detector.threshMask(new RasterRows(image), SyntheticImages.BLOB_COLOR, OK_DIST),
+				image.getWidth(), image.getHeight());
+		measure(name, size, "label pixels", pixels,
+				() -> RasterLabeler.label(mask, new IntDisjointSets(pixels), Connectivity.FOUR));
+		measure(name, size, "label 2x2 blocks", pixels,
+				() -> RasterLabeler.label(mask, new IntDisjointSets(pixels), Connectivity.EIGHT));
+		if (threads > 1) {
+			final ForkJoinPool pool = new ForkJoinPool(threads);
+			measure(name, size, "label " + threads + " strips", pixels,
+					() -> RasterLabeler.labelParallel(mask, new IntDisjointSets(pixels), pool, Connectivity.FOUR));
+			pool.shutdown();
+		}
+
+		// flip a small square between frames, every run flips it back or forth
+		final FrameTracker tracker = new FrameTracker(SyntheticImages.BLOB_COLOR, OK_DIST);
+		tracker.nextFrame(image);
+		final Rectangle square = new Rectangle(image.getWidth() / 2, image.getHeight() / 2, 32, 32);
+		measure(name, size, "track 32x32 change", pixels, () -> {
+			flip(image, square);
+			tracker.nextFrame(image);
+		});
+		measure(name, size, "track 32x32 change, given", pixels, () -> {
+			flip(image, square);
+			tracker.nextFrame(image, Collections.singletonList(square));
+		});
+
+		// union every pixel with its right and lower neighbor, then find all
+		for (final UnionStrategy union : UnionStrategy.values()) {
+			for (final FindStrategy find : FindStrategy.values()) {
+				measure(name, size, "union/find " + union + "/" + find, pixels, () -> {
+					int width = image.getWidth();
+					IntDisjointSets ds = new IntDisjointSets(pixels, find, union);
+					for (int i = 0; i < pixels; i++) {
+						if (i % width != width - 1) {
+							unionItems(ds, i, i + 1);
+						}
+						if (i + width < pixels) {
+							unionItems(ds, i, i + width);
+						}
+					}
+					for (int i = 0; i < pixels; i++) {
+						ds.find(i);
+					}
+				});
+			}
+		}
+	}
+
+	/**
+	 * @param image
+	 *            the picture to change
+	 * @param area
+	 *            the pixels to change, red and white swap
+	 */
+	private static void flip(BufferedImage image, Rectangle area) {
+		for (int y = area.y; y < Math.min(image.getHeight(), area.y + area.height); y++) {
+			for (int x = area.x; x < Math.min(image.getWidth(), area.x + area.width); x++) {
+				image.setRGB(x, y, image.getRGB(x, y) ^ 0x00ffff);
+			}
+		}
+	}
+
+	/**
+	 * @param ds
+	 *            the disjoint sets
+	 * @param a
+	 *            an item
+	 * @param b
+	 *            another item
+	 */
+	private static void unionItems(IntDisjointSets ds, int a, int b) {
+		int rootA = ds.find(a);
+		int rootB = ds.find(b);
+		if (rootA != rootB) {
+			ds.union(rootA, rootB);
+		}
+	}
+
+	/**
+	 * @param name
+	 *            the name of the image
+	 * @param size
+	 *            the size of the image in megapixels
+	 * @param operation
+	 *            the name of the operation
+	 * @param pixels
+	 *            the number of pixels in the image
+	 * @param task
+	 *            the operation
+	 */
+	private static void measure(String name, double size, String operation, int pixels, Runnable task) {
+		for (int i = 0; i < WARMUP_RUNS; i++) {
+			task.run();
+		}
+		long bytes = allocatedBytes();
+		long start = System.nanoTime();
+		for (int i = 0; i < RUNS; i++) {
+			task.run();
+		}
+		long time = System.nanoTime() - start;
+		bytes = allocatedBytes() - bytes;
+		System.out.printf("%-12s %8.1f %-28s %12.2f %12.2f%n", name, size, operation, time / (double) RUNS / pixels,
+				bytes / (double) RUNS / pixels);
+	}
+
+	/**
+	 * @return the bytes allocated by this thread so far, 0 if the JVM cannot
+	 *         tell
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,168 @@
+/**
+ * A thresholded picture packed one bit per pixel, 64 pixels to a long. Every
+ * row starts on a new word, and the bits past the width in the last word of
+ * a row are always 0. Bit x % 64 of word x / 64 is pixel x of the row.
+ *
+ * It takes an 8th of the memory of a byte per pixel mask, and whole words of
+ * background can be skipped with one test, see RunLabels.label(BitMask).
+ *
+ * The mask also keeps a coarse map of where the foreground is: the number
+ * of non-zero words in every band of BAND_ROWS whole rows. The counts are
+ * kept up by setWord(), so they are exact and cost nothing extra to build,
+ * and empty bands can be skipped without looking at their words. Inside a
+ * band a word of background costs one test anyway, so nothing finer is
+ * kept.
+ */
+import java.util.Arrays;
+
+public class BitMask implements PixelRows {
+	// the number of rows in a band
+	public static final int BAND_ROWS = 64;
+
+	private long[] words;
+	private int[] bandWords; // the non-zero words of every band
+	private int width;
+	private int height;
+	private int stride; // the number of words in a row
+
+	/**
+	 * @param width
+	 *            the width of the image
+	 * @param height
+	 *            the height of the image
+	 */
+	public BitMask(int width, int height) {
+		if (width < 0 || height < 0) {
+			throw new IllegalArgumentException();
+		}
+		this.width = width;
+		this.height = height;
+		stride = (width + 63) >>> 6;
+		words = new long[stride * height];
+		bandWords = new int[(height + BAND_ROWS - 1) / BAND_ROWS];
+	}
+
+	/**
+	 * @return the number of pixels in a row
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return the number of rows
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return the number of words in a row
+	 */
+	public int getStride() {
+		return stride;
+	}
+
+	/**
+	 * @param y
+	 *            the row
+	 * @param w
+	 *            the word of the row, pixels 64 * w to 64 * w + 63
+	 * @return the word
+	 */
+	public long getWord(int y, int w) {
+		return words[stride * y + w];
+	}
+
+	/**
+	 * @param y
+	 *            the row
+	 * @param w
+	 *            the word of the row, pixels 64 * w to 64 * w + 63
+	 * @param word
+	 *            the new word, with no bits past the width
+	 */
+	public void setWord(int y, int w, long word) {
+		int i = stride * y + w;
+		if ((words[i] == 0) != (word == 0)) {
+			bandWords[y / BAND_ROWS] += word == 0 ? -1 : 1;
+		}
+		words[i] = word;
+	}
+
+	/**
+	 * @param y
+	 *            a row
+	 * @return true if the band of BAND_ROWS rows holding row y has no pixel
+	 *         set
+	 */
+	public boolean isBandEmpty(int y) {
+		return bandWords[y / BAND_ROWS] == 0;
+	}
+
+	/**
+	 * @param y
+	 *            a row
+	 * @return the row after the last row of the band holding row y
+	 */
+	public int getBandEnd(int y) {
+		return Math.min(height, (y / BAND_ROWS + 1) * BAND_ROWS);
+	}
+
+	/**
+	 * @param x
+	 *            the column of the pixel
+	 * @param y
+	 *            the row of the pixel
+	 * @return true if the pixel is set
+	 */
+	public boolean get(int x, int y) {
+		return (words[stride * y + (x >>> 6)] >>> x & 1) != 0;
+	}
+
+	/**
+	 * Clears every pixel
+	 */
+	public void clear() {
+		Arrays.fill(words, 0);
+		Arrays.fill(bandWords, 0);
+	}
+
+	/**
+	 * @return the number of pixels that are set
+	 */
+	public long cardinality() {
+		long count = 0;
+		for (long word : words) {
+			count += Long.bitCount(word);
+		}
+		return count;
+	}
+
+	/**
+	 * @param y
+	 *            the row to read
+	 * @param row
+	 *            filled with Detector.FOREGROUND for every pixel that is set
+	 *            and 0 for the rest
+	 */
+	public void read(int y, int[] row) {
+		int offset = stride * y;
+		for (int x = 0; x < width; x++) {
+			row[x] = (int) (words[offset + (x >>> 6)] >>> x & 1) * Detector.FOREGROUND;
+		}
+	}
+
+	/**
+	 * @param args
+	 *            command line arguments Main method
+	 */
+	public static void main(String[] args) {
+		BitMask mask = new BitMask(70, 2);
+		mask.setWord(1, 1, 0b101);
+		System.out.println(mask.getStride()); // should be 2
+		System.out.println(mask.get(64, 1) + " " + mask.get(65, 1) + " " + mask.get(66, 1)); // true false true
+		System.out.println(mask.cardinality()); // should be 2
+		System.out.println(mask.isBandEmpty(0) + " " + mask.getBandEnd(1)); // false 2
+	}
+}
@@ -0,0 +1,177 @@
+/**
+ * This class describes a finished blob: its size in pixels, its bounding box,
+ * its centroid, its mean color and the first pixel of it in raster order.
+ */
+import java.awt.Color;
+import java.util.Comparator;
+
+public class Blob {
+	private long size;
+	private int left;
+	private int top;
+	private int right;
+	private int bottom;
+	private int firstX;
+	private int firstY;
+	private long sumX;
+	private long sumY;
+	private long sumRed;
+	private long sumGreen;
+	private long sumBlue;
+
+	/**
+	 * @param size
+	 *            the number of pixels in the blob
+	 * @param left
+	 *            the smallest x of any pixel in the blob
+	 * @param top
+	 *            the smallest y of any pixel in the blob
+	 * @param right
+	 *            the largest x of any pixel in the blob
+	 * @param bottom
+	 *            the largest y of any pixel in the blob
+	 * @param firstX
+	 *            the x of the first pixel of the blob in raster order
+	 * @param firstY
+	 *            the y of the first pixel of the blob in raster order
+	 * @param sumX
+	 *            the sum of the x of every pixel in the blob
+	 * @param sumY
+	 *            the sum of the y of every pixel in the blob
+	 * @param sumRed
+	 *            the sum of the red value of every pixel in the blob
+	 * @param sumGreen
+	 *            the sum of the green value of every pixel in the blob
+	 * @param sumBlue
+	 *            the sum of the blue value of every pixel in the blob
+	 */
+	public Blob(long size, int left, int top, int right, int bottom, int firstX, int firstY, long sumX, long sumY,
+			long sumRed, long sumGreen, long sumBlue) {
+		this.size = size;
+		this.left = left;
+		this.top = top;
+		this.right = right;
+		this.bottom = bottom;
+		this.firstX = firstX;
+		this.firstY = firstY;
+		this.sumX = sumX;
+		this.sumY = sumY;
+		this.sumRed = sumRed;
+		this.sumGreen = sumGreen;
+		this.sumBlue = sumBlue;
+	}
+
+	/**
+	 * @return the number of pixels in the blob
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * @return the smallest x of any pixel in the blob
+	 */
+	public int getLeft() {
+		return left;
+	}
+
+	/**
+	 * @return the smallest y of any pixel in the blob
+	 */
+	public int getTop() {
+		return top;
+	}
+
+	/**
+	 * @return the largest x of any pixel in the blob
+	 */
+	public int getRight() {
+		return right;
+	}
+
+	/**
+	 * @return the largest y of any pixel in the blob
+	 */
+	public int getBottom() {
+		return bottom;
+	}
+
+	/**
+	 * @return the x of the first pixel of the blob in raster order
+	 */
+	public int getFirstX() {
+		return firstX;
+	}
+
+	/**
+	 * @return the y of the first pixel of the blob in raster order
+	 */
+	public int getFirstY() {
+		return firstY;
+	}
+
+	/**
+	 * @return the mean x of the pixels in the blob
+	 */
+	public double getCentroidX() {
+		return sumX / (double) size;
+	}
+
+	/**
+	 * @return the mean y of the pixels in the blob
+	 */
+	public double getCentroidY() {
+		return sumY / (double) size;
+	}
+
+	/**
+	 * @return the mean color of the pixels in the blob
+	 */
+	public Color getMeanColor() {
+		return new Color(Math.round(sumRed / (float) size), Math.round(sumGreen / (float) size),
+				Math.round(sumBlue / (float) size));
+	}
+
+	/**
+	 * @param dx
+	 *            added to every x
+	 * @param dy
+	 *            added to every y
+	 * @return the same blob moved by (dx, dy), for a blob found in a part
+	 *         of a picture
+	 */
+	public Blob translate(int dx, int dy) {
+		return new Blob(size, left + dx, top + dy, right + dx, bottom + dy, firstX + dx, firstY + dy, sumX + size * dx,
+				sumY + size * dy, sumRed, sumGreen, sumBlue);
+	}
+
+	/**
+	 * @return the size and bounding box of the blob
+	 */
+	public String toString() {
+		return size + " pixels, (" + left + ", " + top + ") to (" + right + ", " + bottom + ")";
+	}
+
+	/**
+	 * Orders blobs the way Detector ranks them: largest first, and blobs of
+	 * the same size by their first pixel in raster order.
+	 */
+	public static final Comparator<Blob> BY_RANK = new Comparator<Blob>() {
+		/**
+		 * @param a
+		 *            one blob to compare
+		 * @param b
+		 *            the other blob to compare
+		 * @return negative if a ranks before b
+		 */
+		public int compare(Blob a, Blob b) {
+			if (a.size != b.size) {
+				return a.size > b.size ? -1 : 1;
+			}
+			if (a.firstY != b.firstY) {
+				return a.firstY < b.firstY ? -1 : 1;
+			}
+			return Integer.compare(a.firstX, b.firstX);
+		}
+	};
+}
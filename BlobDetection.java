@@ -11,8 +11,8 @@ public class BlobDetection
     {
         if(args.length<1)
         {
-            System.err.println("Usage: BlobDetection image_file -k K -r red_value -g green_value -b blue_value -d distance [-o image_file_output] [-show]"+
-				"\n\timage_file: *.jpg, *.png, etc\n\tK: number of blobs\n\tred_value, green_value, blue_value: 0-255\n\tdistance: the acceptable distance between the color and a pixel\n\timage_file_output: the file to write out to\n\tshow: display image before ending program");
+            System.err.println("Usage: BlobDetection image_file -k K -r red_value -g green_value -b blue_value -d distance [-o image_file_output] [-p threads] [-n 4|8] [-rle] [-z level] [-c red,green,blue,distance ...] [-stream] [-batch] [-sweep] [-large] [-roi x,y,width,height] [-stats] [-show]"+
+				"\n\timage_file: *.jpg, *.png, etc, or *.ppm and raw RGB *_WIDTHxHEIGHT.rgb, which are memory-mapped and only print the blobs\n\tK: number of blobs\n\tred_value, green_value, blue_value: 0-255\n\tdistance: the acceptable distance between the color and a pixel\n\timage_file_output: the file to write out to\n\tthreads: the number of threads to label with (default 1), -rle always labels on one thread\n\t4|8: the pixels that count as neighbors, 8 adds the diagonals (default 4)\n\trle: label runs of pixels instead of single pixels\n\tlevel: the PNG compression, 0 (store) to 9 (best), 1 is fast (default 6)\n\tred,green,blue,distance: a color to detect with its distance, repeat -c to detect several colors in one pass and only print the blobs\n\tstream: read the image a band at a time and only print the blobs\n\tbatch: image_file is a directory or @list_file, images are handled by threads workers and a summary is written to image_file_output (default stdout)\n\tsweep: print the number of blobs and the K largest sizes for every distance from 0 to 100 instead of detecting at one distance\n\tlarge: label with long pixel ids in a union-find mapped from a temporary file, for raw images past 2^31 pixels, and only print the blobs\n\tx,y,width,height: only detect blobs inside this rectangle of the image\n\tstats: print the time and pixels of every phase and the union-find counters to stderr when done\n\tshow: display image before ending program\n\t-batch, -c, -stream, -sweep, -large and raw images take only one of these modes and none of -o, -p, -rle, -z, -roi, -stats or -show, except -o and -p with -batch and -p with -c");
             return;
         }
 
@@ -23,7 +23,18 @@ public class BlobDetection
         int d=0;
         String img_name="";
         String img_out_name=null;
+        int threads=1;
+        Connectivity connectivity=Connectivity.FOUR;
+        boolean rle=false;
+        int level=PngWriter.DEFAULT;
         boolean show_img=false;
+        boolean stream=false;
+        boolean batch=false;
+        boolean stats=false;
+        boolean sweep=false;
+        boolean large=false;
+        java.awt.Rectangle roi=null;
+        java.util.ArrayList<String> multi=new java.util.ArrayList<String>();
 
 		for(int i=0;i<args.length;i++) {
 			if(args[i].toLowerCase().compareTo("-k")==0) k=Integer.parseInt(args[++i]);
@@ -32,11 +43,169 @@ public class BlobDetection
 			else if(args[i].toLowerCase().compareTo("-b")==0) b=Integer.parseInt(args[++i]);
 			else if(args[i].toLowerCase().compareTo("-d")==0) d=Integer.parseInt(args[++i]);
 			else if(args[i].toLowerCase().compareTo("-o")==0) img_out_name=args[++i];
+			else if(args[i].toLowerCase().compareTo("-p")==0) threads=Integer.parseInt(args[++i]);
+			else if(args[i].toLowerCase().compareTo("-n")==0) {
+				String n=args[++i];
+				if(!n.equals("4") && !n.equals("8")) {
+					System.err.println("! Error: -n should be 4 or 8, current -n=" + n);
+					System.exit(1);
+				}
+				connectivity=n.equals("8")?Connectivity.EIGHT:Connectivity.FOUR;
+			}
+			else if(args[i].toLowerCase().compareTo("-rle")==0) rle=true;
+			else if(args[i].toLowerCase().compareTo("-z")==0) level=Integer.parseInt(args[++i]);
+			else if(args[i].toLowerCase().compareTo("-c")==0) multi.add(args[++i]);
 			else if(args[i].toLowerCase().compareTo("-show")==0) show_img=true;
+			else if(args[i].toLowerCase().compareTo("-stream")==0) stream=true;
+			else if(args[i].toLowerCase().compareTo("-batch")==0) batch=true;
+			else if(args[i].toLowerCase().compareTo("-stats")==0) stats=true;
+			else if(args[i].toLowerCase().compareTo("-sweep")==0) sweep=true;
+			else if(args[i].toLowerCase().compareTo("-large")==0) large=true;
+			else if(args[i].toLowerCase().compareTo("-roi")==0) {
+				String[] parts=args[++i].split(",");
+				roi=new java.awt.Rectangle(Integer.parseInt(parts[0]),Integer.parseInt(parts[1]),Integer.parseInt(parts[2]),Integer.parseInt(parts[3]));
+			}
 			else img_name=args[i];
 		}
 
+        // every mode but the default one only prints blobs, so flags for
+        // labeling, saving or showing one picture would silently do nothing
+        java.util.ArrayList<String> modes = new java.util.ArrayList<String>();
+        if(batch) modes.add("-batch");
+        if(!multi.isEmpty()) modes.add("-c");
+        if(sweep) modes.add("-sweep");
+        if(large) modes.add("-large");
+        if(stream) modes.add("-stream");
+        String mode=!modes.isEmpty()?modes.get(0):MappedRgbRows.isRaw(img_name)?"the raw image "+img_name:null;
+        if(mode != null) {
+          java.util.ArrayList<String> unsupported = new java.util.ArrayList<String>();
+          if(img_out_name != null && !batch) unsupported.add("-o");
+          if(threads != 1 && !batch && multi.isEmpty()) unsupported.add("-p");
+          if(rle) unsupported.add("-rle");
+          if(level != PngWriter.DEFAULT) unsupported.add("-z");
+          if(roi != null) unsupported.add("-roi");
+          if(stats) unsupported.add("-stats");
+          if(show_img) unsupported.add("-show");
+          // only the first of the modes would run
+          unsupported.addAll(modes.subList(Math.min(1, modes.size()), modes.size()));
+          if(!unsupported.isEmpty()) {
+            System.err.println("! Error: " + String.join(" ", unsupported) + " cannot be used with " + mode);
+            System.exit(1);
+          }
+        }
+
+        if(batch) {
+          try {
+            java.util.List<java.io.File> files = BatchDetector.listImages(img_name);
+            BatchDetector detector = new BatchDetector(new Color(r, g, b), d, k, threads);
+            detector.setConnectivity(connectivity);
+            if (img_out_name == null) {
+              detector.run(files, System.out);
+            } else {
+              try (java.io.PrintStream summary = new java.io.PrintStream(img_out_name)) {
+                detector.run(files, summary);
+              }
+            }
+          } catch (java.io.IOException e) {
+            System.err.println("! Error: Failed to read " + img_name + ", error msg: " + e);
+          }
+          return;
+        }
+
+        if(!multi.isEmpty()) {
+          Color[] colors = new Color[multi.size()];
+          int[] dists = new int[multi.size()];
+          for(int i=0;i<multi.size();i++) {
+            String[] parts = multi.get(i).split(",");
+            colors[i] = new Color(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+            dists[i] = parts.length > 3 ? Integer.parseInt(parts[3]) : d;
+          }
+          try {
+            MultiColorDetector detector = new MultiColorDetector(img_name, colors, dists);
+            detector.setThreads(threads);
+            detector.setConnectivity(connectivity);
+            detector.detect();
+            detector.outputResults(k);
+          } catch (java.io.IOException e) {
+            System.err.println("! Error: Failed to read " + img_name + ", error msg: " + e);
+          }
+          return;
+        }
+
+        if(sweep) {
+          // every distance at once, so there is no single picture to save or show
+          try (MappedRgbRows rows = MappedRgbRows.isRaw(img_name) ? MappedRgbRows.open(img_name) : null) {
+            ThresholdSweep thresholds = rows != null ? new ThresholdSweep(rows, new Color(r, g, b), k)
+                : new ThresholdSweep(img_name, new Color(r, g, b), k);
+            thresholds.setConnectivity(connectivity);
+            thresholds.sweep();
+            thresholds.outputResults();
+          } catch (java.io.IOException e) {
+            System.err.println("! Error: Failed to read " + img_name + ", error msg: " + e);
+          }
+          return;
+        }
+
+        if(large) {
+          // every label is kept, off the heap, so the file can be as big as the image
+          java.nio.file.Path sets = null;
+          try (MappedRgbRows rows = MappedRgbRows.isRaw(img_name) ? MappedRgbRows.open(img_name) : null) {
+            PixelRows pixels = rows;
+            if (pixels == null) {
+              java.awt.image.BufferedImage image = javax.imageio.ImageIO.read(new java.io.File(img_name));
+              if (image == null) {
+                throw new java.io.IOException("No reader for " + img_name);
+              }
+              pixels = new RasterRows(image);
+            }
+            sets = java.nio.file.Files.createTempFile("blobs", ".sets");
+            try (LargeDetector detector = new LargeDetector(pixels, new Color(r, g, b), d)) {
+              detector.setConnectivity(connectivity);
+              detector.setStorage(sets);
+              detector.detect();
+              detector.outputResults(k);
+            }
+          } catch (java.io.IOException e) {
+            System.err.println("! Error: Failed to read " + img_name + ", error msg: " + e);
+          } finally {
+            if (sets != null) {
+              sets.toFile().delete();
+            }
+          }
+          return;
+        }
+
+        if(MappedRgbRows.isRaw(img_name)) {
+          // raw and PPM frames are mapped, not decoded, and only the blobs are printed
+          try (MappedRgbRows rows = MappedRgbRows.open(img_name)) {
+            StreamingDetector detector = new StreamingDetector(rows, new Color(r, g, b), d);
+            detector.setConnectivity(connectivity);
+            detector.outputResults(k);
+          } catch (java.io.IOException e) {
+            System.err.println("! Error: Failed to read " + img_name + ", error msg: " + e);
+          }
+          return;
+        }
+
+        if(stream) {
+          // the image never fits in memory, so there is nothing to save or show
+          StreamingDetector detector = new StreamingDetector(img_name, new Color(r, g, b), d);
+          detector.setConnectivity(connectivity);
+          detector.outputResults(k);
+          return;
+        }
+
+        // the phases are recorded from the start, so decoding is timed too
+        PhaseRecording phases = stats ? new PhaseRecording() : null;
+        UnionFindStats counters = stats ? new UnionFindStats() : null;
+
         Detector detector = new Detector(img_name, new Color(r, g, b), d);
+        detector.setStats(counters);
+        detector.setThreads(threads);
+        detector.setConnectivity(connectivity);
+        detector.setRunLength(rle);
+        detector.setCompression(level);
+        detector.setRegion(roi);
         detector.detect();
 		
 		String img_out_name_ec = null;
@@ -51,7 +220,17 @@ public class BlobDetection
 			img_out_name_ec = namePart+"_ec.png";
 		}
 		
-        detector.outputResults(img_out_name, img_out_name_ec, k);
+        // the images are written in the background, wait for both
+        detector.outputResults(img_out_name, img_out_name_ec, k).join();
+
+        if(stats) {
+          try {
+            phases.stop(System.err);
+          } catch (java.io.IOException e) {
+            System.err.println("! Error: Failed to read the phase times, error msg: " + e);
+          }
+          System.err.println(counters);
+        }
 
         //display the image after segmentation
         if(show_img) {
@@ -0,0 +1,325 @@
+/**
+ * The bounding box, coordinate sums (for the centroid), channel sums (for
+ * the mean color) and first pixel of every foreground set of an IntDisjointSets over the
+ * pixels of an image, merged in O(1) on every union. Every pixel whose mask
+ * value is not 0 counts as foreground, so the classes of
+ * Detector.classify() work as well.
+ *
+ * A set of one pixel needs no storage, its values come from the pixel
+ * itself. Only roots of bigger sets get a slot, and a slot is only taken
+ * when two single pixels are joined, so there are never more slots than
+ * half the foreground pixels. Slots live in chunks that are allocated as
+ * needed. Unions of sets owned by different threads (as in
+ * RasterLabeler.labelParallel) may run at the same time.
+ *
+ * The elements are pixel ids, width * y + x, unless a TileIds is given, in
+ * which case they are its elements and are turned into pixels with it. The
+ * first pixel is always kept as a pixel id.
+ */
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public class BlobStats implements RootAggregate {
+	// the values kept in every slot
+	private static final int LEFT = 0;
+	private static final int TOP = 1;
+	private static final int RIGHT = 2;
+	private static final int BOTTOM = 3;
+	private static final int SUM_X = 4;
+	private static final int SUM_Y = 5;
+	private static final int SUM_RED = 6;
+	private static final int SUM_GREEN = 7;
+	private static final int SUM_BLUE = 8;
+	private static final int FIRST = 9; // the smallest pixel id, first in raster order
+	private static final int FIELDS = 10;
+	private static final int CHUNK_SLOTS = 1 << 10;
+
+	private BufferedImage image; // the colors of the pixels
+	private byte[] mask; // only sets that are not 0 in the mask are kept
+	private TileIds ids; // the pixel of every element, null if elements are pixels
+	private int width;
+	private int[] slotOf; // the slot + 1 of every root with a slot, 0 if none
+	private AtomicInteger slotCount = new AtomicInteger();
+	private AtomicReferenceArray<long[]> chunks;
+
+	/**
+	 * @param image
+	 *            the picture, which must not change while the stats are used
+	 * @param mask
+	 *            the thresholded picture, one byte per pixel
+	 */
+	public BlobStats(BufferedImage image, byte[] mask) {
+		this(image, mask, null);
+	}
+
+	/**
+	 * @param image
+	 *            the picture, which must not change while the stats are used
+	 * @param mask
+	 *            the thresholded picture, one byte per pixel
+	 * @param ids
+	 *            the numbers of the pixels the disjoint sets are over, null
+	 *            if they are over pixel ids
+	 */
+	public BlobStats(BufferedImage image, byte[] mask, TileIds ids) {
+		slotOf = new int[0];
+		chunks = new AtomicReferenceArray<long[]>(1);
+		reset(image, mask, ids);
+	}
+
+	/**
+	 * @param image
+	 *            the next picture, the same size as the last one
+	 * @param mask
+	 *            its thresholded picture
+	 * 
+	 *            Forgets every set so the stats can be used for another image,
+	 *            keeping the slot chunks already allocated.
+	 */
+	public void reset(BufferedImage image, byte[] mask) {
+		reset(image, mask, null);
+	}
+
+	/**
+	 * @param image
+	 *            the next picture
+	 * @param mask
+	 *            its thresholded picture
+	 * @param ids
+	 *            the numbers of its pixels, null if the disjoint sets are
+	 *            over pixel ids
+	 * 
+	 *            Forgets every set so the stats can be used for another image.
+	 *            The arrays only grow when there are more elements than they
+	 *            hold.
+	 */
+	public void reset(BufferedImage image, byte[] mask, TileIds ids) {
+		if (image == null || mask == null) {
+			throw new NullPointerException();
+		}
+		int elements = ids == null ? mask.length : ids.getElementCount();
+		if (slotOf.length < elements) {
+			slotOf = new int[elements];
+		}
+		// no more slots than half the elements are ever taken
+		int chunkCount = elements / 2 / CHUNK_SLOTS + 1;
+		if (chunks.length() < chunkCount) {
+			AtomicReferenceArray<long[]> more = new AtomicReferenceArray<long[]>(chunkCount);
+			for (int i = 0; i < chunks.length(); i++) {
+				more.set(i, chunks.get(i));
+			}
+			chunks = more;
+		}
+		this.image = image;
+		this.mask = mask;
+		this.ids = ids;
+		this.width = image.getWidth();
+		Arrays.fill(slotOf, 0, elements, 0);
+		slotCount.set(0);
+	}
+
+	/**
+	 * @param id
+	 *            an element
+	 * @return the pixel id of the element
+	 */
+	private int pixel(int id) {
+		return ids == null ? id : ids.toPixel(id);
+	}
+
+	/**
+	 * @param root
+	 *            the root of the unioned set
+	 * @param other
+	 *            the old root of the set that was joined into it
+	 */
+	public void merge(int root, int other) {
+		if (mask[pixel(root)] == 0) {
+			return;
+		}
+		if (slotOf[root] == 0) {
+			if (slotOf[other] != 0) {
+				// take over the slot of the bigger set
+				slotOf[root] = slotOf[other];
+				addPixel(slotOf[root] - 1, root);
+				return;
+			}
+			slotOf[root] = newSlot(root) + 1;
+		}
+		int slot = slotOf[root] - 1;
+		if (slotOf[other] == 0) {
+			addPixel(slot, other);
+			return;
+		}
+		long[] into = chunk(slot);
+		long[] from = chunk(slotOf[other] - 1);
+		int i = (slot % CHUNK_SLOTS) * FIELDS;
+		int j = ((slotOf[other] - 1) % CHUNK_SLOTS) * FIELDS;
+		into[i + LEFT] = Math.min(into[i + LEFT], from[j + LEFT]);
+		into[i + TOP] = Math.min(into[i + TOP], from[j + TOP]);
+		into[i + RIGHT] = Math.max(into[i + RIGHT], from[j + RIGHT]);
+		into[i + BOTTOM] = Math.max(into[i + BOTTOM], from[j + BOTTOM]);
+		for (int field = SUM_X; field <= SUM_BLUE; field++) {
+			into[i + field] += from[j + field];
+		}
+		into[i + FIRST] = Math.min(into[i + FIRST], from[j + FIRST]);
+	}
+
+	/**
+	 * @param id
+	 *            the pixel the new slot starts with
+	 * @return the new slot
+	 */
+	private int newSlot(int id) {
+		int slot = slotCount.getAndIncrement();
+		int index = slot / CHUNK_SLOTS;
+		if (chunks.get(index) == null) {
+			chunks.compareAndSet(index, null, new long[CHUNK_SLOTS * FIELDS]);
+		}
+		long[] values = chunk(slot);
+		int i = (slot % CHUNK_SLOTS) * FIELDS;
+		int p = pixel(id);
+		int x = p % width;
+		int y = p / width;
+		int rgb = image.getRGB(x, y);
+		values[i + LEFT] = values[i + RIGHT] = values[i + SUM_X] = x;
+		values[i + TOP] = values[i + BOTTOM] = values[i + SUM_Y] = y;
+		values[i + SUM_RED] = (rgb >> 16) & 0xff;
+		values[i + SUM_GREEN] = (rgb >> 8) & 0xff;
+		values[i + SUM_BLUE] = rgb & 0xff;
+		values[i + FIRST] = p;
+		return slot;
+	}
+
+	/**
+	 * @param slot
+	 *            the slot to add to
+	 * @param id
+	 *            the pixel to add
+	 */
+	private void addPixel(int slot, int id) {
+		long[] values = chunk(slot);
+		int i = (slot % CHUNK_SLOTS) * FIELDS;
+		int p = pixel(id);
+		int x = p % width;
+		int y = p / width;
+		int rgb = image.getRGB(x, y);
+		values[i + LEFT] = Math.min(values[i + LEFT], x);
+		values[i + TOP] = Math.min(values[i + TOP], y);
+		values[i + RIGHT] = Math.max(values[i + RIGHT], x);
+		values[i + BOTTOM] = Math.max(values[i + BOTTOM], y);
+		values[i + SUM_X] += x;
+		values[i + SUM_Y] += y;
+		values[i + SUM_RED] += (rgb >> 16) & 0xff;
+		values[i + SUM_GREEN] += (rgb >> 8) & 0xff;
+		values[i + SUM_BLUE] += rgb & 0xff;
+		values[i + FIRST] = Math.min(values[i + FIRST], p);
+	}
+
+	/**
+	 * @param slot
+	 *            a slot
+	 * @return the chunk the slot is in
+	 */
+	private long[] chunk(int slot) {
+		return chunks.get(slot / CHUNK_SLOTS);
+	}
+
+	/**
+	 * @param root
+	 *            the root of a foreground set
+	 * @param field
+	 *            the value wanted
+	 * @return the value for the set
+	 */
+	private long get(int root, int field) {
+		if (slotOf[root] != 0) {
+			return chunk(slotOf[root] - 1)[((slotOf[root] - 1) % CHUNK_SLOTS) * FIELDS + field];
+		}
+		// a single pixel
+		int p = pixel(root);
+		int x = p % width;
+		int y = p / width;
+		int rgb = image.getRGB(x, y);
+		switch (field) {
+		case LEFT:
+		case RIGHT:
+		case SUM_X:
+			return x;
+		case TOP:
+		case BOTTOM:
+		case SUM_Y:
+			return y;
+		case SUM_RED:
+			return (rgb >> 16) & 0xff;
+		case SUM_GREEN:
+			return (rgb >> 8) & 0xff;
+		case FIRST:
+			return p;
+		default:
+			return rgb & 0xff;
+		}
+	}
+
+	/**
+	 * @param root
+	 *            the root of a foreground set
+	 * @param size
+	 *            the number of pixels in the set
+	 * @param first
+	 *            the id of the first pixel of the set in raster order
+	 * @return a description of the set
+	 */
+	public Blob toBlob(int root, int size, int first) {
+		return new Blob(size, (int) get(root, LEFT), (int) get(root, TOP), (int) get(root, RIGHT),
+				(int) get(root, BOTTOM), first % width, first / width, get(root, SUM_X), get(root, SUM_Y),
+				get(root, SUM_RED), get(root, SUM_GREEN), get(root, SUM_BLUE));
+	}
+
+	/**
+	 * @param root
+	 *            the root of a foreground set
+	 * @return the id of the first pixel of the set in raster order
+	 */
+	public int getFirst(int root) {
+		return (int) get(root, FIRST);
+	}
+
+	/**
+	 * @param root
+	 *            the root of a foreground set
+	 * @return the smallest x of any pixel in the set
+	 */
+	public int getLeft(int root) {
+		return (int) get(root, LEFT);
+	}
+
+	/**
+	 * @param root
+	 *            the root of a foreground set
+	 * @return the smallest y of any pixel in the set
+	 */
+	public int getTop(int root) {
+		return (int) get(root, TOP);
+	}
+
+	/**
+	 * @param root
+	 *            the root of a foreground set
+	 * @return the largest x of any pixel in the set
+	 */
+	public int getRight(int root) {
+		return (int) get(root, RIGHT);
+	}
+
+	/**
+	 * @param root
+	 *            the root of a foreground set
+	 * @return the largest y of any pixel in the set
+	 */
+	public int getBottom(int root) {
+		return (int) get(root, BOTTOM);
+	}
+}
@@ -0,0 +1,15 @@
+/**
+ * What forEachComponent() of the disjoint sets classes does with every set.
+ * The root and size come as plain ints, so going over millions of sets
+ * boxes nothing.
+ */
+public interface ComponentAction {
+
+	/**
+	 * @param root
+	 *            the root of a set
+	 * @param size
+	 *            the number of elements in the set
+	 */
+	void accept(int root, int size);
+}
@@ -0,0 +1,246 @@
+/**
+ * A thread-safe version of IntDisjointSets for sets of int ids 0..n-1 that
+ * many threads can find and union in at once without a lock. Parent links
+ * and sizes live in atomic int arrays and are only changed with
+ * compare-and-set. find is wait-free (path splitting, one CAS per step and
+ * no retries), union is lock-free (link by a fixed random priority of the
+ * roots, retried if another thread linked one of them first).
+ *
+ * Sets are not kept as member lists here, since two lists cannot be spliced
+ * with a single CAS.
+ */
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+public class ConcurrentDisjointSets {
+
+	private AtomicIntegerArray parent; // the parent of every item, roots point at themselves
+	private AtomicIntegerArray sizes; // the set sizes, held by the roots
+	private int size;
+
+	/**
+	 * @param n
+	 *            the number of elements, each starts in its own set
+	 */
+	public ConcurrentDisjointSets(int n) {
+		if (n < 0) {
+			throw new IllegalArgumentException();
+		}
+		size = n;
+		parent = new AtomicIntegerArray(n);
+		sizes = new AtomicIntegerArray(n);
+		for (int i = 0; i < n; i++) {
+			parent.set(i, i);
+			sizes.set(i, 1);
+		}
+	}
+
+	/**
+	 * @param x
+	 *            an item in a set whose root we want
+	 * @return the root of the set, which may stop being the root as soon as
+	 *         another thread unions it
+	 */
+	public int find(int x) {
+		assertIsItem(x);
+		while (true) {
+			int p = parent.get(x);
+			if (p == x) {
+				return x;
+			}
+			int grandparent = parent.get(p);
+			if (p != grandparent) {
+				// path splitting, if another thread got there first that is fine
+				parent.compareAndSet(x, p, grandparent);
+			}
+			x = p;
+		}
+	}
+
+	/**
+	 * @param item1
+	 *            an item in the first set to be joined
+	 * @param item2
+	 *            an item in the second set to be joined
+	 * @return the root of the unioned set at the time it was joined
+	 *
+	 *         Unlike IntDisjointSets any items can be given, since a root can
+	 *         stop being a root while another thread is running.
+	 */
+	public int union(int item1, int item2) {
+		assertIsItem(item1);
+		assertIsItem(item2);
+		while (true) {
+			int root1 = find(item1);
+			int root2 = find(item2);
+			if (root1 == root2) {
+				return root1;
+			}
+			// the root with the lower priority is linked under the other one
+			int oldRoot = root1;
+			int newRoot = root2;
+			if (priority(root1) > priority(root2)) {
+				oldRoot = root2;
+				newRoot = root1;
+			}
+			if (parent.compareAndSet(oldRoot, oldRoot, newRoot)) {
+				addSize(newRoot, sizes.getAndSet(oldRoot, 0));
+				return newRoot;
+			}
+			// oldRoot was linked by another thread first, try again
+		}
+	}
+
+	/**
+	 * @param x
+	 *            the item to add to
+	 * @param amount
+	 *            the size to add
+	 *
+	 *            Adds to the size held by x. If x was linked under another root
+	 *            in the meantime, whatever x holds is moved up to its root, so
+	 *            once all unions are done every size is held by its root.
+	 */
+	private void addSize(int x, int amount) {
+		while (amount != 0) {
+			sizes.addAndGet(x, amount);
+			int p = parent.get(x);
+			if (p == x) {
+				return;
+			}
+			amount = sizes.getAndSet(x, 0);
+			x = find(p);
+		}
+	}
+
+	/**
+	 * @param x
+	 *            an item
+	 * @return a fixed random priority of the item, no two items share one
+	 */
+	private static int priority(int x) {
+		// multiplying by an odd number is a bijection on int
+		return x * 0x9E3779B9;
+	}
+
+	/**
+	 * @param item1
+	 *            an item
+	 * @param item2
+	 *            another item
+	 * @return true if the items are in the same set
+	 */
+	public boolean sameSet(int item1, int item2) {
+		while (true) {
+			int root1 = find(item1);
+			int root2 = find(item2);
+			if (root1 == root2) {
+				return true;
+			}
+			// if root1 is still a root the sets really were different
+			if (parent.get(root1) == root1) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * @param x
+	 *            the item in question
+	 */
+	private void assertIsItem(int x) {
+		if (x < 0 || x >= size) {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * @param i
+	 *            the root of the set whose size we want returned
+	 * @return the size of the set, exact once no unions are running
+	 */
+	public int size(int i) {
+		assertIsItem(i);
+		if (parent.get(i) != i) {
+			throw new IllegalArgumentException();
+		}
+		return sizes.get(i);
+	}
+
+	/**
+	 * @return how many elements are in the disjoint set
+	 */
+	public int sizeDisjoint() {
+		return size;
+	}
+
+	/**
+	 * @param args
+	 *            command line arguments Main method
+	 *
+	 *            Stress test: several threads union random pairs at once and
+	 *            the result is checked against IntDisjointSets doing the same
+	 *            unions on one thread. A mismatch throws, so the program
+	 *            ends with a non-zero status.
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		int n = 1 << 20;
+		int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+		int unionsPerThread = n / threads;
+		Random random = new Random(42);
+		final int[][] pairs = new int[threads][unionsPerThread * 2];
+		for (int[] work : pairs) {
+			for (int i = 0; i < work.length; i++) {
+				// mostly nearby items, so long chains and big sets form
+				work[i] = i % 2 == 0 ? random.nextInt(n) : Math.floorMod(work[i - 1] + random.nextInt(64) - 32, n);
+			}
+		}
+
+		final ConcurrentDisjointSets cds = new ConcurrentDisjointSets(n);
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			final int[] work = pairs[t];
+			workers[t] = new Thread(() -> {
+				for (int i = 0; i < work.length; i += 2) {
+					cds.union(work[i], work[i + 1]);
+				}
+			});
+			workers[t].start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+
+		IntDisjointSets ds = new IntDisjointSets(n);
+		for (int[] work : pairs) {
+			for (int i = 0; i < work.length; i += 2) {
+				int root1 = ds.find(work[i]);
+				int root2 = ds.find(work[i + 1]);
+				if (root1 != root2) {
+					ds.union(root1, root2);
+				}
+			}
+		}
+
+		// the partitions match if the roots map one to one and sizes agree
+		int[] rootOf = new int[n];
+		Arrays.fill(rootOf, -1);
+		boolean matches = true;
+		for (int i = 0; i < n; i++) {
+			int root = ds.find(i);
+			int concurrentRoot = cds.find(i);
+			if (rootOf[root] == -1) {
+				rootOf[root] = concurrentRoot;
+				matches &= ds.size(root) == cds.size(concurrentRoot);
+			}
+			matches &= rootOf[root] == concurrentRoot;
+		}
+		System.out.println(threads + " threads, " + n + " items");
+		System.out.println("Partition matches: " + matches); // should be true
+		if (!matches) {
+			throw new IllegalStateException("! Error: the concurrent unions gave a different partition");
+		}
+		System.out.println(cds.sameSet(pairs[0][0], pairs[0][1])); // should be true
+	}
+}
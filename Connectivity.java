@@ -0,0 +1,19 @@
+/**
+ * Which pixels count as neighbors when RasterLabeler joins pixels into blobs.
+ * Detector labels with labelTiles(), which only looks at foreground pixels,
+ * one at a time, for both. The notes below are for label() and
+ * labelParallel(), which MultiColorDetector uses.
+ */
+public enum Connectivity {
+	/**
+	 * the pixels above, below, left and right, one pixel at a time (every
+	 * value is labeled, the background too)
+	 */
+	FOUR,
+
+	/**
+	 * the diagonal pixels as well, labeled in 2x2 blocks (only values other
+	 * than 0 are labeled, background pixels are left as sets of their own)
+	 */
+	EIGHT
+}
@@ -7,10 +7,12 @@
  */
 
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
 import java.util.AbstractCollection;
-import java.util.TreeSet;
 
 import javax.imageio.ImageIO;
 import java.io.File;
@@ -23,6 +25,9 @@ import java.awt.geom.*;
 import javax.swing.JPanel;
 
 public class Detector extends JPanel {
+	// the mask value of a pixel that is the color of the blobs
+	public static final byte FOREGROUND = 1;
+
 	/**
 	 * @param c1
 	 *            a color
@@ -60,107 +65,325 @@ public class Detector extends JPanel {
 	 *            we want) or black (if it's the color we want). okDist
 	 */
 	public static void thresh(BufferedImage image, Color c, int okDist) {
-		int width = image.getWidth();
-		int height = image.getHeight();
-		for (int i = 0; i < width; i++) {
-			for (int k = 0; k < height; k++) {
-				int pixelId = getId(image, i, k);
-				Pixel p = getPixel(image, pixelId);
-				Color c2 = getColor(image, p);
-
-				int distance = getDifference(c2, c);
-				if (distance > okDist) {
-					image.setRGB(i, k, Color.WHITE.getRGB());
-				} else {
-					image.setRGB(i, k, Color.BLACK.getRGB());
+		drawMask(image, threshMask(new RasterRows(image), c, okDist));
+	}
+
+	/**
+	 * @param rows
+	 *            the rows of packed RGB values of the picture
+	 * @param c
+	 *            the color of the blob(s) we want to detect
+	 * @param okDist
+	 *            indicates the acceptable "distance" between the pixel and the
+	 *            color c (inclusive).
+	 * @return one byte per pixel in row-major order, FOREGROUND if the pixel
+	 *         is the color we want and 0 if not
+	 * 
+	 *         Same result as comparing getDifference() with okDist for every
+	 *         pixel, but reads the picture row by row and only uses integer
+	 *         arithmetic per pixel.
+	 */
+	public static byte[] threshMask(PixelRows rows, Color c, int okDist) {
+		return threshMask(rows, c, okDist, new byte[rows.getWidth() * rows.getHeight()]);
+	}
+
+	/**
+	 * @param rows
+	 *            the rows of packed RGB values of the picture
+	 * @param c
+	 *            the color of the blob(s) we want to detect
+	 * @param okDist
+	 *            indicates the acceptable "distance" between the pixel and the
+	 *            color c (inclusive).
+	 * @param mask
+	 *            where to write the mask, at least one byte per pixel, so a
+	 *            mask can be reused from image to image
+	 * @return mask
+	 */
+	public static byte[] threshMask(PixelRows rows, Color c, int okDist, byte[] mask) {
+		int width = rows.getWidth();
+		int height = rows.getHeight();
+		int[] row = new int[width];
+		int bound = maxSquaredDistance(okDist);
+		int red = c.getRed();
+		int green = c.getGreen();
+		int blue = c.getBlue();
+		for (int y = 0; y < height; y++) {
+			rows.read(y, row);
+			int offset = width * y;
+			for (int x = 0; x < width; x++) {
+				int rgb = row[x];
+				int distanceRed = ((rgb >> 16) & 0xff) - red;
+				int distanceGreen = ((rgb >> 8) & 0xff) - green;
+				int distanceBlue = (rgb & 0xff) - blue;
+				mask[offset + x] = distanceRed * distanceRed + distanceGreen * distanceGreen
+						+ distanceBlue * distanceBlue <= bound ? FOREGROUND : 0;
+			}
+		}
+		return mask;
+	}
+
+	/**
+	 * @param rows
+	 *            the rows of packed RGB values of the picture
+	 * @param c
+	 *            the color of the blob(s) we want to detect
+	 * @param okDist
+	 *            indicates the acceptable "distance" between the pixel and the
+	 *            color c (inclusive).
+	 * @param mask
+	 *            where to write the mask, the same size as the picture
+	 * @return mask, with the bits set where the pixel is the color we want
+	 * 
+	 *         Same test as threshMask(), but packs 64 pixels into every word
+	 *         without a branch per pixel.
+	 */
+	public static BitMask threshBits(PixelRows rows, Color c, int okDist, BitMask mask) {
+		int width = rows.getWidth();
+		int height = rows.getHeight();
+		if (mask.getWidth() != width || mask.getHeight() != height) {
+			throw new IllegalArgumentException();
+		}
+		int[] row = new int[width];
+		int bound = maxSquaredDistance(okDist);
+		int red = c.getRed();
+		int green = c.getGreen();
+		int blue = c.getBlue();
+		for (int y = 0; y < height; y++) {
+			rows.read(y, row);
+			int x = 0;
+			for (int w = 0; w < mask.getStride(); w++) {
+				long word = 0;
+				int end = Math.min(width, x + 64);
+				for (; x < end; x++) {
+					int rgb = row[x];
+					int distanceRed = ((rgb >> 16) & 0xff) - red;
+					int distanceGreen = ((rgb >> 8) & 0xff) - green;
+					int distanceBlue = (rgb & 0xff) - blue;
+					int sum = distanceRed * distanceRed + distanceGreen * distanceGreen + distanceBlue * distanceBlue;
+					// the sign bit of bound - sum is 0 when the pixel counts
+					word |= (long) (~(bound - sum) >>> 31) << x;
 				}
+				mask.setWord(y, w, word);
 			}
 		}
+		return mask;
 	}
 
 	/**
-	 * @param image
-	 *            is a BufferedImage object of the picture we will use for blob
-	 *            detection
-	 * @param ds
-	 *            disjoint sets object to hold blobs
-	 * @param pixelId
-	 *            a pixel whose neighboring sets will be found
-	 * @return a pair object representing the blobs above and to the left of the
-	 *         pixel's set
+	 * @param rows
+	 *            the rows of packed RGB values of the picture
+	 * @param colors
+	 *            the colors of the blobs we want to detect, at most 127
+	 * @param okDists
+	 *            the acceptable "distance" to each color (inclusive)
+	 * @param mask
+	 *            where to write the classes, at least one byte per pixel
+	 * @return mask, holding i + 1 for pixels that count as colors[i] and 0
+	 *         for pixels that match no color. A pixel that counts as several
+	 *         colors gets the closest one, or the first listed on a tie.
 	 * 
-	 *         Given an image, a disjoint set, and a pixel (defined by its id),
-	 *         this method returns a pair which contains (a) the blob above and
-	 *         (b) the blob to the left (each represented by their _root_ ids)
-	 *         If there is no above/left neighbor, then the appropriate part of
-	 *         the pair is null
-	 */
-	public static Pair<Integer, Integer> getNeighborSets(BufferedImage image, DisjointSets<Pixel> ds, int pixelId) {
-		int baseRoot = ds.find(pixelId);
-		Integer rootAbove = null;
-		if (baseRoot >= image.getWidth()) {
-			rootAbove = baseRoot - image.getWidth();
-			rootAbove = ds.find(rootAbove);
-		}
-		Integer rootLeft = baseRoot - 1;
-		if (baseRoot % image.getWidth() != 0) {
-			rootLeft = ds.find(rootLeft);
-		} else {
-			rootLeft = null;
+	 *         Classifies every pixel against all the colors in one pass.
+	 */
+	public static byte[] classify(PixelRows rows, Color[] colors, int[] okDists, byte[] mask) {
+		if (colors.length != okDists.length || colors.length > Byte.MAX_VALUE) {
+			throw new IllegalArgumentException();
 		}
+		int width = rows.getWidth();
+		int height = rows.getHeight();
+		int[] row = new int[width];
+		int count = colors.length;
+		int[] bounds = new int[count];
+		int[] reds = new int[count];
+		int[] greens = new int[count];
+		int[] blues = new int[count];
+		for (int i = 0; i < count; i++) {
+			bounds[i] = maxSquaredDistance(okDists[i]);
+			reds[i] = colors[i].getRed();
+			greens[i] = colors[i].getGreen();
+			blues[i] = colors[i].getBlue();
+		}
+		for (int y = 0; y < height; y++) {
+			rows.read(y, row);
+			int offset = width * y;
+			for (int x = 0; x < width; x++) {
+				int rgb = row[x];
+				int red = (rgb >> 16) & 0xff;
+				int green = (rgb >> 8) & 0xff;
+				int blue = rgb & 0xff;
+				int best = 0;
+				int bestDistance = Integer.MAX_VALUE;
+				for (int i = 0; i < count; i++) {
+					int distanceRed = red - reds[i];
+					int distanceGreen = green - greens[i];
+					int distanceBlue = blue - blues[i];
+					int distance = distanceRed * distanceRed + distanceGreen * distanceGreen
+							+ distanceBlue * distanceBlue;
+					if (distance <= bounds[i] && distance < bestDistance) {
+						best = i + 1;
+						bestDistance = distance;
+					}
+				}
+				mask[offset + x] = (byte) best;
+			}
+		}
+		return mask;
+	}
 
-		Pair<Integer, Integer> returnedPair = new Pair(rootAbove, rootLeft);
-		return returnedPair;
+	/**
+	 * @param okDist
+	 *            the acceptable distance from getDifference()
+	 * @return the largest sum of squared channel differences whose
+	 *         getDifference() is still at most okDist, -1 if there is none
+	 */
+	public static int maxSquaredDistance(int okDist) {
+		// getDifference() never shrinks as the sum grows, so binary search
+		// for the last sum that still counts using its exact arithmetic
+		int low = -1;
+		int high = 3 * 255 * 255;
+		while (low < high) {
+			int middle = low + (high - low + 1) / 2;
+			int distance = (int) Math.floor((middle / (3 * Math.pow(255, 2))) * 100);
+			if (distance <= okDist) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return low;
 	}
 
 	/**
-	 * This method detects blobs of the desired color in an image.
+	 * @param image
+	 *            the picture to draw on
+	 * @param mask
+	 *            one byte per pixel in row-major order
+	 * 
+	 *            Colors the pixels black where the mask is FOREGROUND and white
+	 *            everywhere else, one row at a time.
 	 */
-	public void detect() {
-		// threshold the image
-		thresh(img, blobColor, okDist);
-
-		ArrayList<Pixel> pixels = new ArrayList();
-		int width = img.getWidth();
-		int height = img.getHeight();
-
-		// make your DS data structure
-		for (int i = 0; i < height; i++) {
-			for (int k = 0; k < width; k++) {
-				int pixelId = getId(img, k, i);
-				Pixel p = getPixel(img, pixelId);
-				pixels.add(p);
+	public static void drawMask(BufferedImage image, byte[] mask) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int[] row = new int[width];
+		for (int y = 0; y < height; y++) {
+			int offset = width * y;
+			for (int x = 0; x < width; x++) {
+				row[x] = mask[offset + x] == FOREGROUND ? Color.BLACK.getRGB() : Color.WHITE.getRGB();
 			}
+			image.setRGB(0, y, width, 1, row, 0, width);
 		}
+	}
 
-		ds = new DisjointSets(pixels);
-		// for all pixel ids
-		// walk through the image and perform
-		// finds and unions where appropriate
-		for (int i = 0; i < img.getWidth() * img.getHeight(); i++) {
-			int rootOriginal = ds.find(i);
-			Pair pair = getNeighborSets(img, ds, rootOriginal);
-			Color colorOriginal = getColor(img, pixels.get(i));
-
-			if (pair.a != null) {
-				Color colorAbove = getColor(img, pixels.get((int) pair.a));
-				if (colorOriginal.equals(colorAbove)) {
-					ds.union(rootOriginal, (int) pair.a);
-					rootOriginal = ds.find(i);
-				}
+	/**
+	 * @param image
+	 *            the picture to draw on
+	 * @param mask
+	 *            one bit per pixel
+	 * 
+	 *            Colors the pixels black where the mask is set and white
+	 *            everywhere else, one row at a time. Rows of empty bands are
+	 *            not looked at.
+	 */
+	public static void drawMask(BufferedImage image, BitMask mask) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int[] row = new int[width];
+		int[] blank = new int[width];
+		int black = Color.BLACK.getRGB();
+		int white = Color.WHITE.getRGB();
+		Arrays.fill(blank, white);
+		for (int y = 0; y < height; y++) {
+			if (mask.isBandEmpty(y)) {
+				image.setRGB(0, y, width, 1, blank, 0, width);
+				continue;
+			}
+			for (int x = 0; x < width; x++) {
+				row[x] = (mask.getWord(y, x >>> 6) >>> x & 1) != 0 ? black : white;
 			}
+			image.setRGB(0, y, width, 1, row, 0, width);
+		}
+	}
 
-			if (pair.b != null) {
-				Color colorLeft = getColor(img, pixels.get((int) pair.b));
-				if (colorOriginal.equals(colorLeft) && rootOriginal != (int) pair.b) {
-					ds.union(rootOriginal, (int) pair.b);
-				}
+	/**
+	 * This method detects blobs of the desired color in an image.
+	 */
+	public void detect() {
+		// threshold the image into a mask, the buffers of the last image are
+		// reused if it was the same size
+		chooseArea();
+		int width = area.getWidth();
+		int height = area.getHeight();
+		if (runLength) {
+			// only the runs of the mask are labeled, see RunLabels. The mask
+			// is packed one bit per pixel and runs are read a word at a time
+			if (bits == null || bits.getWidth() != width || bits.getHeight() != height) {
+				bits = new BitMask(width, height);
 			}
+			PhaseEvent event = PhaseEvent.start(PhaseEvent.THRESH, (long) width * height);
+			threshBits(new RasterRows(area), blobColor, okDist, bits);
+			event.commit();
+			event = PhaseEvent.start(PhaseEvent.DETECT, (long) width * height);
+			if (runs == null) {
+				runs = new RunLabels();
+			}
+			runs.setStats(counters);
+			runs.label(bits, connectivity);
+			event.commit();
+			return;
+		}
+
+		if (mask == null || mask.length != width * height) {
+			mask = new byte[width * height];
+		}
+		PhaseEvent event = PhaseEvent.start(PhaseEvent.THRESH, (long) width * height);
+		threshMask(new RasterRows(area), blobColor, okDist, mask);
+		event.commit();
+		event = PhaseEvent.start(PhaseEvent.DETECT, (long) width * height);
+
+		// make your DS data structure, one int id per pixel of the tiles
+		// that have any of the color (see TileIds), and label the mask into
+		// it
+		if (tileIds == null) {
+			tileIds = new TileIds();
+		}
+		tileIds.update(mask, width, height);
+		if (ds == null) {
+			ds = new IntDisjointSets(tileIds.getElementCount(), findStrategy, unionStrategy);
+			stats = new BlobStats(area, mask, tileIds);
+			ds.setAggregate(stats);
+		} else {
+			ds.reset(tileIds.getElementCount());
+			stats.reset(area, mask, tileIds);
 		}
+		ds.setStats(counters);
+		RasterLabeler.labelTiles(mask, tileIds, ds, connectivity, threads > 1 ? pool : null);
+		event.commit();
 
 		// After this, the instance variable this.ds should contain your color
-		// blobs
-		// (and non-color areas) for this.img
+		// blobs for this.img, background pixels are left as sets of their own
+	}
+
+	/**
+	 * Picks the part of the picture detect() looks at: the region, clipped
+	 * to the picture, as an image sharing its pixels.
+	 */
+	private void chooseArea() {
+		area = source;
+		areaX = 0;
+		areaY = 0;
+		if (region == null) {
+			return;
+		}
+		Rectangle inside = region.intersection(new Rectangle(0, 0, source.getWidth(), source.getHeight()));
+		if (inside.isEmpty()) {
+			throw new IllegalArgumentException("! Error: the region " + region + " is outside the image");
+		}
+		if (inside.width < source.getWidth() || inside.height < source.getHeight()) {
+			area = source.getSubimage(inside.x, inside.y, inside.width, inside.height);
+			areaX = inside.x;
+			areaY = inside.y;
+		}
 	}
 
 	/**
@@ -173,35 +396,18 @@ public class Detector extends JPanel {
 	 *            blobs and saves output.
 	 * @param k
 	 *            the number of blobs we are interested in
+	 * @return a handle that completes once both images are written, which
+	 *         happens in the background
 	 */
-	public void outputResults(String outputFileName, String outputECFileName, int k) {
+	public CompletableFuture<Void> outputResults(String outputFileName, String outputECFileName, int k) {
 		if (k < 1) {
 			throw new IllegalArgumentException(new String("! Error: k should be greater than 0, current k=" + k));
 		}
-		// get all the roots from the DS
-		TreeSet roots = new TreeSet();
-		for (int i = 0; i < ds.sizeDisjoint(); i++) {
-			roots.add(ds.find(i));
-		}
-		ArrayList<Set> setsRoots = new ArrayList<Set>();
-
-		// using the roots, collect all sets of pixels and sort them by size
-		for (Object i : roots) {
-			Integer root = (Integer) i;
-			Set s = ds.get(root);
-			Pixel p = getPixel(img, (int) root);
-			Color c2 = getColor(img, p);
-			if (c2.equals(Color.BLACK)) {
-				setsRoots.add(s);
-			}
-		}
-
-		Collections.sort(setsRoots, new SortBySize());
+		TopK best = new TopK(k);
+		int blobs = rankBlobs(best);
 
-		if (setsRoots.size() < k) {
-			k = setsRoots.size();
-		}
-		System.out.println(k + "/" + setsRoots.size());
+		k = best.size();
+		System.out.println(k + "/" + blobs);
 		Integer rectwidth = null;
 		Integer rectheight = null;
 		Integer top = null;
@@ -209,29 +415,57 @@ public class Detector extends JPanel {
 		Integer left = null;
 		Integer right = null;
 
-		// recolor the k-largest blobs from black to a color from getSeqColor()
-		// and output all blobs to console
+		// the bounding box of the largest blob was kept up during detect()
+		// it was kept in the coordinates of the region
+		int x0 = areaX;
+		int y0 = areaY;
+		if (k > 0 && runLength) {
+			int root = (int) best.getId(0);
+			left = x0 + runs.getLeft(root);
+			right = x0 + runs.getRight(root);
+			top = y0 + runs.getTop(root);
+			bottom = y0 + runs.getBottom(root);
+		} else if (k > 0) {
+			int root = (int) best.getId(0);
+			left = x0 + stats.getLeft(root);
+			right = x0 + stats.getRight(root);
+			top = y0 + stats.getTop(root);
+			bottom = y0 + stats.getBottom(root);
+		}
+
+		// draw the thresholded image, then recolor the k-largest blobs from
+		// black to a color from getSeqColor() and output all blobs to console.
+		// It is drawn on a new image so the source stays as it was.
+		// Outside the region everything is background.
+		img = emptyCopy(source);
+		BufferedImage view = img;
+		if (area != source) {
+			Graphics2D background = img.createGraphics();
+			background.setColor(Color.WHITE);
+			background.fillRect(0, 0, img.getWidth(), img.getHeight());
+			background.dispose();
+			view = img.getSubimage(x0, y0, area.getWidth(), area.getHeight());
+		}
+		if (runLength) {
+			drawMask(view, bits);
+		} else {
+			drawMask(view, mask);
+		}
+		int width = view.getWidth();
 		for (int i = 0; i < k; i++) {
 			Color c = getSeqColor(i, k);
-			Set<Pixel> s = setsRoots.get(i);
-			for (Pixel p : s) {
-				if (i == 0) {
-					if (left == null || p.a < left) {
-						left = p.a;
-					}
-					if (right == null || p.a > right) {
-						right = p.a;
-					}
-					if (top == null || p.b < top) {
-						top = p.b;
-					}
-					if (bottom == null || p.b > bottom) {
-						bottom = p.b;
-					}
-				}
-				img.setRGB(p.a, p.b, c.getRGB());
+			int root = (int) best.getId(i);
+			if (runLength) {
+				runs.fill(view, root, c.getRGB());
+				System.out.println("Blob " + (i + 1) + ": " + runs.size(root) + " pixels");
+				continue;
 			}
-			System.out.println("Blob " + (i + 1) + ": " + s.size() + " pixels");
+			PrimitiveIterator.OfInt s = ds.get(root);
+			while (s.hasNext()) {
+				int id = tileIds.toPixel(s.nextInt());
+				view.setRGB(id % width, id / width, c.getRGB());
+			}
+			System.out.println("Blob " + (i + 1) + ": " + ds.size(root) + " pixels");
 		}
 
 		if (right != null && left != null && bottom != null && top != null) {
@@ -243,16 +477,12 @@ public class Detector extends JPanel {
 		Graphics g = img.getGraphics();
 		paint(g);
 
-		// save output image -- provided
-		try {
-			File ouptut = new File(outputFileName);
-			ImageIO.write(this.img, "png", ouptut);
-			System.err.println("- Saved result to " + outputFileName);
-		} catch (Exception e) {
-			System.err.println("! Error: Failed to save image to " + outputFileName);
-		}
+		// save output image, img is never drawn on again once it is handed
+		// to the writer
+		CompletableFuture<Boolean> blobImage = save(img, outputFileName);
 
-		reloadImage();
+		// the box is drawn on a copy of the source, nothing is read again
+		img = copyOf(source);
 		Graphics2D g2 = img.createGraphics();
 
 		if (rectwidth != null && rectheight != null) {
@@ -262,33 +492,126 @@ public class Detector extends JPanel {
 			g2.draw(shape);
 		}
 
-		try {
-			File ouptut = new File(outputECFileName);
-			ImageIO.write(this.img, "png", ouptut);
-			System.err.println("- Saved result to " + outputECFileName);
-		} catch (Exception e) {
-			System.err.println("! Error: Failed to save image to " + outputECFileName);
-		}
+		CompletableFuture<Boolean> ecImage = save(img, outputECFileName);
 
+		// report in the same order whichever finishes first
+		return blobImage.thenAcceptBoth(ecImage, (blobSaved, ecSaved) -> {
+			report(outputFileName, blobSaved);
+			report(outputECFileName, ecSaved);
+		});
 	}
 
 	/**
-	 * Comparator class to sort disjoint sets by size
+	 * @param image
+	 *            the image to save
+	 * @param fileName
+	 *            the name of the PNG file
+	 * @return a handle that completes with true once the image is saved, or
+	 *         with false if it could not be
 	 */
-	private static class SortBySize implements Comparator<Set> {
+	private CompletableFuture<Boolean> save(BufferedImage image, String fileName) {
+		return pngWriter.writeAsync(image, new File(fileName)).handle((done, e) -> e == null);
+	}
 
-		/**
-		 * @param a
-		 *            one set to compare
-		 * @param b
-		 *            the other set to compare
-		 * @return return the difference in size
-		 */
-		public int compare(Set a, Set b) {
-			return b.size() - a.size();
+	/**
+	 * @param fileName
+	 *            the name of a PNG file
+	 * @param saved
+	 *            true if it was saved
+	 */
+	private static void report(String fileName, boolean saved) {
+		if (saved) {
+			System.err.println("- Saved result to " + fileName);
+		} else {
+			System.err.println("! Error: Failed to save image to " + fileName);
 		}
 	}
 
+	/**
+	 * @param k
+	 *            the number of blobs we are interested in
+	 * @return the k largest blobs with their bounding boxes, centroids and
+	 *         mean colors, ranked the same way outputResults() ranks them
+	 */
+	public List<Blob> getBlobs(int k) {
+		TopK best = new TopK(k);
+		rankBlobs(best);
+		ArrayList<Blob> blobs = new ArrayList<Blob>();
+		for (int i = 0; i < best.size(); i++) {
+			int root = (int) best.getId(i);
+			Blob blob;
+			if (runLength) {
+				blob = runs.toBlob(root, (int) best.getOrder(i), area);
+			} else {
+				blob = stats.toBlob(root, ds.size(root), (int) best.getOrder(i));
+			}
+			blobs.add(blob.translate(areaX, areaY));
+		}
+		return blobs;
+	}
+
+	/**
+	 * @param best
+	 *            offered every black blob, and sorted afterwards
+	 * @return the number of black blobs
+	 * 
+	 *         Finds the largest black blobs in one pass over the roots of ds,
+	 *         without a find per pixel. A blob is offered at its first pixel,
+	 *         so equal sized blobs rank the same however the image was
+	 *         labeled.
+	 */
+	private int rankBlobs(TopK best) {
+		PhaseEvent event = PhaseEvent.start(PhaseEvent.RANK, (long) area.getWidth() * area.getHeight());
+		if (runLength) {
+			blobCount = runs.rank(best);
+			event.commit();
+			return blobCount;
+		}
+		// only the roots are visited, a blob is offered at its first pixel
+		int[] blobs = new int[1];
+		ds.forEachComponent((root, size) -> {
+			int pixel = tileIds.toPixel(root);
+			if (pixel >= 0 && mask[pixel] == FOREGROUND) {
+				blobs[0]++;
+				best.offer(size, stats.getFirst(root), root);
+			}
+		});
+		best.sort();
+		blobCount = blobs[0];
+		event.commit();
+		return blobCount;
+	}
+
+	/**
+	 * @return the number of black blobs, as of the last getBlobs() or
+	 *         outputResults()
+	 */
+	public int getBlobCount() {
+		return blobCount;
+	}
+
+	/**
+	 * @param image
+	 *            an image
+	 * @return a new image of the same size and type, with no pixels set
+	 */
+	private static BufferedImage emptyCopy(BufferedImage image) {
+		ColorModel cm = image.getColorModel();
+		return new BufferedImage(cm, image.getRaster().createCompatibleWritableRaster(), cm.isAlphaPremultiplied(),
+				null);
+	}
+
+	/**
+	 * @param image
+	 *            an image
+	 * @return a new image of the same size and type with the same pixels,
+	 *         copied in bulk from the raster without decoding anything
+	 */
+	private static BufferedImage copyOf(BufferedImage image) {
+		ColorModel cm = image.getColorModel();
+		return new BufferedImage(cm, image.copyData(null), cm.isAlphaPremultiplied(), null);
+	}
+
 	/**
 	 * @param args
 	 *            command line arguments Main method
@@ -315,11 +638,30 @@ public class Detector extends JPanel {
 
 	// Data
 	public BufferedImage img; // this is the 2D array of RGB pixels
+	private BufferedImage source; // the decoded picture, never written to
+	private Rectangle region; // the part of source to detect in, null for all of it
+	private BufferedImage area; // the part of source the last detect() looked at
+	private int areaX; // where area is in source
+	private int areaY;
 	private Color blobColor; // the color of the blob we are detecting
 	private String imgFileName; // input image file name
-	private DisjointSets<Pixel> ds; // the disjoint set
+	private IntDisjointSets ds; // the disjoint set of the pixels of tileIds
+	private TileIds tileIds; // numbers the pixels of the tiles with the color
+	private byte[] mask; // the thresholded image, FOREGROUND where the color is
+	private BitMask bits; // the same, one bit per pixel, if runLength
+	private BlobStats stats; // bounding boxes, centroids and colors of the blobs
+	private int blobCount; // black blobs found by the last ranking
 	private int okDist; // the distance between blobColor and the pixel which
 	// "still counts" as the color
+	private FindStrategy findStrategy = FindStrategy.COMPRESSION; // how ds finds roots
+	private UnionStrategy unionStrategy = UnionStrategy.SIZE; // how ds unions
+	private int threads = 1; // the number of threads detect() labels with
+	private ForkJoinPool pool; // the threads, null for 1
+	private Connectivity connectivity = Connectivity.FOUR; // which pixels are neighbors
+	private boolean runLength; // label runs instead of pixels
+	private RunLabels runs; // the runs of the mask, if runLength
+	private PngWriter pngWriter = new PngWriter(); // writes the output images
+	private UnionFindStats counters; // finds and unions of ds or runs, null for none
 
 	/**
 	 * @param imgfile
@@ -340,13 +682,152 @@ public class Detector extends JPanel {
 	}
 
 	/**
-	 * Constructor - reads image from file
+	 * @param image
+	 *            the picture to detect blobs in, detect() does not change it
+	 * @param blobColor
+	 *            the color of the blob to be detected
+	 * @param okDist
+	 *            the thresh hold from the color that is acceptable for a color
+	 *            considered the "same color" as the blobColor Constructor -
+	 *            uses an image that is already in memory
+	 */
+	public Detector(BufferedImage image, Color blobColor, int okDist) {
+		if (image == null) {
+			throw new NullPointerException();
+		}
+		this.source = image;
+		this.img = image;
+		this.blobColor = blobColor;
+		this.okDist = okDist;
+	}
+
+	/**
+	 * @param image
+	 *            the next picture to detect blobs in, detect() does not change
+	 *            it
+	 * 
+	 *            Lets one Detector work through many images. The buffers of
+	 *            the last image are reused if this one is the same size.
+	 */
+	public void setImage(BufferedImage image) {
+		if (image == null) {
+			throw new NullPointerException();
+		}
+		this.source = image;
+		this.img = image;
+		this.imgFileName = null;
+	}
+
+	/**
+	 * @param findStrategy
+	 *            how the disjoint set shortens paths during find
+	 * @param unionStrategy
+	 *            how the disjoint set picks the new root during union
+	 * 
+	 *            Chooses the disjoint set used by the next call to detect().
+	 */
+	public void setStrategies(FindStrategy findStrategy, UnionStrategy unionStrategy) {
+		if (findStrategy == null || unionStrategy == null) {
+			throw new NullPointerException();
+		}
+		this.findStrategy = findStrategy;
+		this.unionStrategy = unionStrategy;
+		ds = null;
+	}
+
+	/**
+	 * @param threads
+	 *            the number of threads detect() labels the image with, 1
+	 *            labels on the calling thread
+	 * 
+	 *            The threads are started here and kept for every later
+	 *            detect(). They are daemon threads, so they never keep the
+	 *            program from ending.
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("! Error: threads should be greater than 0, current threads=" + threads);
+		}
+		if (pool != null) {
+			pool.shutdown();
+		}
+		this.threads = threads;
+		pool = threads > 1 ? new ForkJoinPool(threads) : null;
+	}
+
+	/**
+	 * @param connectivity
+	 *            which pixels count as neighbors in the next call to detect(),
+	 *            FOUR by default
+	 */
+	public void setConnectivity(Connectivity connectivity) {
+		if (connectivity == null) {
+			throw new NullPointerException();
+		}
+		this.connectivity = connectivity;
+	}
+
+	/**
+	 * @param region
+	 *            the part of the picture the next call to detect() looks at,
+	 *            null for all of it. Pixels outside it count as background,
+	 *            so thresholding, labeling and the disjoint sets only cost as
+	 *            much as the region. Blobs and output images are still in the
+	 *            coordinates of the whole picture.
+	 */
+	public void setRegion(Rectangle region) {
+		this.region = region == null ? null : new Rectangle(region);
+	}
+
+	/**
+	 * @param runLength
+	 *            true if the next call to detect() labels runs of the mask
+	 *            (see RunLabels) instead of single pixels. The blobs come out
+	 *            the same either way. Runs are labeled on the calling
+	 *            thread, whatever setThreads() says.
+	 */
+	public void setRunLength(boolean runLength) {
+		this.runLength = runLength;
+		ds = null;
+		runs = null;
+	}
+
+	/**
+	 * @param counters
+	 *            counts the finds and unions of the next calls to detect()
+	 *            and outputResults(), null for none
+	 */
+	public void setStats(UnionFindStats counters) {
+		this.counters = counters;
+		if (ds != null) {
+			ds.setStats(counters);
+		}
+	}
+
+	/**
+	 * @param level
+	 *            the deflate level of the images outputResults() writes, from
+	 *            PngWriter.STORE (0) to PngWriter.BEST (9)
+	 */
+	public void setCompression(int level) {
+		pngWriter.setLevel(level);
+	}
+
+	/**
+	 * Constructor - reads image from file. This is the only time the file is
+	 * decoded, every output image is derived from the decoded source.
 	 */
 	public void reloadImage() {
 		File imageFile = new File(this.imgFileName);
 
 		try {
-			this.img = ImageIO.read(imageFile);
+			PhaseEvent event = PhaseEvent.start(PhaseEvent.DECODE, 0);
+			this.source = ImageIO.read(imageFile);
+			if (this.source != null) {
+				event.setPixels((long) this.source.getWidth() * this.source.getHeight());
+			}
+			event.commit();
+			this.img = this.source;
 		} catch (IOException e) {
 			System.err.println("! Error: Failed to read " + this.imgFileName + ", error msg: " + e);
 			return;
@@ -429,7 +910,22 @@ public class Detector extends JPanel {
 	 * @return the id of the pixel at the location in the image
 	 */
 	private static int getId(BufferedImage image, int x, int y) {
-		return (image.getWidth() * y) + x;
+		return Math.toIntExact(getLongId(image.getWidth(), x, y));
+	}
+
+	/**
+	 * @param width
+	 *            the width of the image
+	 * @param x
+	 *            the x coordinate
+	 * @param y
+	 *            the y coordinate
+	 * @return the id of the pixel at the location, width * y + x worked out
+	 *         as a long so images past 2^31 pixels get ids too (see
+	 *         LongDisjointSets)
+	 */
+	public static long getLongId(int width, int x, int y) {
+		return (long) width * y + x;
 	}
 
 	/**
@@ -6,25 +6,46 @@
  *Task 1. DisjointSets class (15%)
  *An implementation of the DisjointSets class from the textbook
  *using union by size and path compression.
+ *Union by rank and path halving/splitting can be chosen instead.
  */
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.stream.IntStream;
 
 
 public class DisjointSets<T> {
 
 	private int[] s; // the sets
 	private ArrayList<Set<T>> sets; // the actual data for the sets
+	private byte[] rank; // tree heights, only used for union by rank
 	private int size;
+	private int components; // the number of sets
+	private FindStrategy findStrategy;
+	private UnionStrategy unionStrategy;
+	private UnionFindStats stats; // counters, null unless setStats() was called
 
 	/**
 	 * @param data an ArrayList containing the data for the disjoint sets
 	 */
 	 
 	public DisjointSets(ArrayList<T> data) {
-		if(data == null){
+		this(data, FindStrategy.COMPRESSION, UnionStrategy.SIZE);
+	}
+
+	/**
+	 * @param data an ArrayList containing the data for the disjoint sets
+	 * @param findStrategy how find shortens paths
+	 * @param unionStrategy how union picks the new root
+	 */
+	public DisjointSets(ArrayList<T> data, FindStrategy findStrategy, UnionStrategy unionStrategy) {
+		if(data == null || findStrategy == null || unionStrategy == null){
 			throw new NullPointerException();
 		}
+		this.findStrategy = findStrategy;
+		this.unionStrategy = unionStrategy;
+		if (unionStrategy == UnionStrategy.RANK) {
+			rank = new byte[data.size()];
+		}
 		size = data.size();
 		s = new int[data.size()];
 		sets = new ArrayList();
@@ -36,6 +57,7 @@ public class DisjointSets<T> {
 			s[i] = -1;
 			i++;
 		}
+		components = size;
 	}
 
 	/**
@@ -49,9 +71,16 @@ public class DisjointSets<T> {
 		// throw IllegalArgumentException() if non-roots provided
 		assertIsRoot(root1);
 		assertIsRoot(root2);
+		if (stats != null) {
+			stats.countUnion(-(s[root1] + s[root2]));
+		}
+		components--;
 
 		Set tempSetNewRoot;
 		Set tempSet;
+		if (unionStrategy == UnionStrategy.RANK) {
+			return unionByRank(root1, root2);
+		}
 		// Compute the union of two sets using rank union by size
 		// if two sets are equal, root1 is the new root
 		if (s[root2] < s[root1]) {
@@ -75,17 +104,88 @@ public class DisjointSets<T> {
 		}
 	}
 
+	/**
+	 * @param root1 the root of the first set to be joined
+	 * @param root2 the root of the second set to be joined
+	 * @return the root of the unioned set, the root of the taller tree
+	 */
+	private int unionByRank(int root1, int root2) {
+		int newRoot = root1;
+		int oldRoot = root2;
+		if (rank[root2] > rank[root1]) {
+			newRoot = root2;
+			oldRoot = root1;
+		} else if (rank[root1] == rank[root2]) {
+			rank[root1]++;
+		}
+		s[newRoot] = s[newRoot] + s[oldRoot];
+		s[oldRoot] = newRoot;
+		sets.get(newRoot).addAll(sets.get(oldRoot));
+		sets.get(oldRoot).clear();
+		return newRoot;
+	}
+
+	/**
+	 * @param stats counts every find and union from now on, null for none
+	 */
+	public void setStats(UnionFindStats stats) {
+		this.stats = stats;
+	}
+
 	/**
 	 * @param x an item in a set whose root we want
 	 * @return the root of the set
 	 */
 	public int find(int x) {
 		assertIsItem(x);
-		if (s[x] < 0) {
+		// the parent links walked, counted as they are walked
+		int length = 0;
+		switch (findStrategy) {
+		case HALVING:
+			while (s[x] >= 0) {
+				if (s[s[x]] >= 0) {
+					s[x] = s[s[x]];
+				}
+				x = s[x];
+				length++;
+			}
+			countFind(length);
 			return x;
-		} else {
-			// Find and return the root using path compression
-			return s[x] = find(s[x]);
+		case SPLITTING:
+			while (s[x] >= 0) {
+				int parent = s[x];
+				if (s[parent] >= 0) {
+					s[x] = s[parent];
+				}
+				x = parent;
+				length++;
+			}
+			countFind(length);
+			return x;
+		default:
+			// Find the root, then point the whole path at it
+			int root = x;
+			while (s[root] >= 0) {
+				root = s[root];
+				length++;
+			}
+			while (x != root) {
+				int parent = s[x];
+				s[x] = root;
+				x = parent;
+			}
+			countFind(length);
+			return root;
+		}
+	}
+
+	/**
+	 * @param length the parent links a find walked, given to the counters if
+	 * there are any
+	 */
+	private void countFind(int length) {
+		if (stats != null) {
+			stats.countFind(length);
 		}
 	}
 
@@ -101,6 +201,36 @@ public class DisjointSets<T> {
 
 	}
 
+	/**
+	 * @return the roots of all the sets, in increasing order, read straight
+	 * from the parent array without any find. The stream can be made
+	 * parallel.
+	 */
+	public IntStream roots() {
+		return IntStream.range(0, size).filter(i -> s[i] < 0);
+	}
+
+	/**
+	 * @param action given the root and size of every set, in increasing
+	 * order of roots
+	 * Goes over the parent array once, O(n) time and no find
+	 */
+	public void forEachComponent(ComponentAction action) {
+		for (int i = 0; i < size; i++) {
+			if (s[i] < 0) {
+				action.accept(i, -s[i]);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of sets, kept up by union()
+	 * O(1) time
+	 */
+	public int getComponentCount() {
+		return components;
+	}
+
 	/**
 	 * @param root the root in question
 	 */
@@ -130,7 +260,8 @@ public class DisjointSets<T> {
 	}
 
 	/**
-	 * @return how many sets are in the disjoint set
+	 * @return how many elements are in the disjoint set, see
+	 * getComponentCount() for the number of sets
 	 */
 	public int sizeDisjoint() {
 		return size;
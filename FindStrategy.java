@@ -0,0 +1,21 @@
+/**
+ * The ways the disjoint sets classes can shorten paths during find. All of
+ * them are iterative, so long chains cannot overflow the stack.
+ */
+public enum FindStrategy {
+	/**
+	 * walk up to the root, then point every node on the path at the root
+	 * (two passes, full path compression)
+	 */
+	COMPRESSION,
+
+	/**
+	 * point every other node on the path at its grandparent (one pass)
+	 */
+	HALVING,
+
+	/**
+	 * point every node on the path at its grandparent (one pass)
+	 */
+	SPLITTING
+}
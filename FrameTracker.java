@@ -0,0 +1,1113 @@
+/**
+ * This class detects blobs in a sequence of frames from a fixed camera,
+ * where only small parts of the picture change from one frame to the next,
+ * and follows every blob from frame to frame under the same id.
+ *
+ * The frame is cut into square tiles. Every tile keeps the labels of its own
+ * pixels and a few numbers for each of its pieces of blob (the parts of
+ * blobs inside the tile), and the pairs of pieces that touch across its
+ * right and bottom borders. A new frame is compared to the last one tile by
+ * tile, and only tiles that changed are thresholded and labeled again, along
+ * with the border links around them.
+ *
+ * Every piece has a slot in one IntDisjointSets, and the slots of a blob are
+ * one set, whose root holds the numbers of the whole blob. Only the blobs
+ * with a piece in a changed tile or on a relinked border are dissolved into
+ * their pieces and unioned again along the links, so a frame costs time in
+ * the changed area and the blobs that reach into it, not in the frame size.
+ * The other blobs keep their sets, numbers and ids untouched.
+ *
+ * A blob keeps the id of the blob of the last frame it shares the most
+ * pixels with. Pieces in unchanged tiles share all their pixels with the
+ * blob they belonged to, and only changed tiles are compared pixel by pixel.
+ * When blobs merge, the merged blob keeps the id with the most pixels in it.
+ * When a blob splits, the biggest part keeps its id and the rest get new
+ * ones.
+ *
+ * Blobs are 4-connected, the same as Detector by default.
+ */
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PrimitiveIterator;
+
+public class FrameTracker {
+	// tiles are this many pixels square unless the constructor says otherwise
+	public static final int DEFAULT_TILE_SIZE = 64;
+
+	private Color blobColor; // the color of the blob we are detecting
+	private int okDist; // the distance between blobColor and the pixel which
+	// "still counts" as the color
+	private int tileSize;
+	private int width;
+	private int height;
+	private int tilesX; // tiles in a row of tiles
+	private int tilesY; // rows of tiles
+	private int[] pixels; // the latest frame, packed RGB
+	private Tile[] tiles;
+	private boolean[] dirty; // tiles labeled again for the latest frame
+	private int dirtyCount;
+	private int nextId = 1; // the id the next new blob gets
+
+	// the blobs of the latest frame: a slot for every piece, the numbers of a
+	// blob are kept at the root of its slots
+	private IntDisjointSets blobs = new IntDisjointSets(0);
+	private int[] slotTiles = new int[0]; // the tile of every slot, -1 if free
+	private int[] slotPieces = new int[0]; // the piece of every slot in its tile
+	private int[] freeSlots = new int[0];
+	private int freeCount;
+	private int[] blobIds = new int[0];
+	private long[] sizes = new long[0];
+	private int[] lefts = new int[0];
+	private int[] tops = new int[0];
+	private int[] rights = new int[0];
+	private int[] bottoms = new int[0];
+	private int[] firsts = new int[0]; // the id of the first pixel in raster order
+	private long[] sums = new long[0]; // SUMS values per blob, see Tile
+	private int[] liveRoots = new int[0]; // the root of every blob of the latest frame
+	private int[] livePlaces = new int[0]; // where a root is in liveRoots
+	private int liveCount; // the number of blobs
+
+	// the slots taken apart or added in the latest frame
+	private int frameCount; // frames seen, to stamp the slots and tiles with
+	private int[] touched = new int[16];
+	private int touchedCount;
+	private int[] oldIds = new int[0]; // the id the blob of a touched slot had
+	private int[] dissolved = new int[0]; // the frame a slot was last touched in
+	private int[] counted = new int[0]; // the frame a root was last counted in
+	private int[] joined; // the frame the links of a tile were last unioned in
+	private int[] taken = new int[0]; // the frame an id was last handed out in
+	private Shares shares = new Shares(); // pixels every blob shares with every old id
+
+	// reused while labeling a tile
+	private byte[] tileMask;
+	private IntDisjointSets tileSets;
+	private int[] compact;
+
+	/**
+	 * @param blobColor
+	 *            the color of the blob to be detected
+	 * @param okDist
+	 *            the thresh hold from the color that is acceptable for a color
+	 *            considered the "same color" as the blobColor
+	 */
+	public FrameTracker(Color blobColor, int okDist) {
+		this(blobColor, okDist, DEFAULT_TILE_SIZE);
+	}
+
+	/**
+	 * @param blobColor
+	 *            the color of the blob to be detected
+	 * @param okDist
+	 *            the thresh hold from the color that is acceptable for a color
+	 *            considered the "same color" as the blobColor
+	 * @param tileSize
+	 *            the width and height of a tile in pixels
+	 */
+	public FrameTracker(Color blobColor, int okDist, int tileSize) {
+		if (tileSize < 1) {
+			throw new IllegalArgumentException("! Error: tileSize should be greater than 0, current tileSize="
+					+ tileSize);
+		}
+		this.blobColor = blobColor;
+		this.okDist = okDist;
+		this.tileSize = tileSize;
+		this.tileMask = new byte[tileSize * tileSize];
+		this.tileSets = new IntDisjointSets(tileSize * tileSize);
+		this.compact = new int[tileSize * tileSize];
+	}
+
+	/**
+	 * @param frame
+	 *            the next frame, the same size as the ones before it
+	 *
+	 *            Compares the frame to the last one tile by tile and labels
+	 *            only the tiles that changed. The first frame is labeled
+	 *            whole.
+	 */
+	public void nextFrame(BufferedImage frame) {
+		if (!start(frame)) {
+			// compare row by row, a tile is dirty if any of its pixels changed
+			int[] row = new int[width];
+			for (int y = 0; y < height; y++) {
+				RasterRows.read(frame, y, row);
+				int offset = width * y;
+				int tileRow = (y / tileSize) * tilesX;
+				for (int tx = 0; tx < tilesX; tx++) {
+					int from = tx * tileSize;
+					int to = Math.min(width, from + tileSize);
+					if (!dirty[tileRow + tx]
+							&& !Arrays.equals(row, from, to, pixels, offset + from, offset + to)) {
+						dirty[tileRow + tx] = true;
+					}
+				}
+				System.arraycopy(row, 0, pixels, offset, width);
+			}
+		}
+		update();
+	}
+
+	/**
+	 * @param frame
+	 *            the next frame, the same size as the ones before it
+	 * @param changed
+	 *            the parts of the frame that may have changed since the last
+	 *            one, as the camera or an encoder reports them
+	 *
+	 *            Labels only the tiles that overlap the changed rectangles,
+	 *            without comparing the rest of the frame at all.
+	 */
+	public void nextFrame(BufferedImage frame, List<Rectangle> changed) {
+		if (!start(frame)) {
+			int[] row = new int[width];
+			for (Rectangle rect : changed) {
+				Rectangle area = rect.intersection(new Rectangle(0, 0, width, height));
+				if (area.isEmpty()) {
+					continue;
+				}
+				for (int ty = area.y / tileSize; ty <= (area.y + area.height - 1) / tileSize; ty++) {
+					for (int tx = area.x / tileSize; tx <= (area.x + area.width - 1) / tileSize; tx++) {
+						dirty[ty * tilesX + tx] = true;
+					}
+				}
+				for (int y = area.y; y < area.y + area.height; y++) {
+					RasterRows.read(frame, y, row);
+					System.arraycopy(row, area.x, pixels, width * y + area.x, area.width);
+				}
+			}
+		}
+		update();
+	}
+
+	/**
+	 * @param frame
+	 *            the next frame
+	 * @return true if this is the first frame, which was read whole and
+	 *         marks every tile dirty
+	 */
+	private boolean start(BufferedImage frame) {
+		if (tiles != null) {
+			if (frame.getWidth() != width || frame.getHeight() != height) {
+				throw new IllegalArgumentException("! Error: frames should all be " + width + "x" + height
+						+ ", current frame is " + frame.getWidth() + "x" + frame.getHeight());
+			}
+			Arrays.fill(dirty, false);
+			return false;
+		}
+		width = frame.getWidth();
+		height = frame.getHeight();
+		tilesX = (width + tileSize - 1) / tileSize;
+		tilesY = (height + tileSize - 1) / tileSize;
+		pixels = new int[width * height];
+		int[] row = new int[width];
+		for (int y = 0; y < height; y++) {
+			RasterRows.read(frame, y, row);
+			System.arraycopy(row, 0, pixels, width * y, width);
+		}
+		tiles = new Tile[tilesX * tilesY];
+		for (int ty = 0; ty < tilesY; ty++) {
+			for (int tx = 0; tx < tilesX; tx++) {
+				int x0 = tx * tileSize;
+				int y0 = ty * tileSize;
+				tiles[ty * tilesX + tx] = new Tile(x0, y0, Math.min(tileSize, width - x0),
+						Math.min(tileSize, height - y0));
+			}
+		}
+		dirty = new boolean[tiles.length];
+		Arrays.fill(dirty, true);
+		joined = new int[tiles.length];
+		return true;
+	}
+
+	/**
+	 * Takes apart the blobs that reach into the dirty tiles, labels those
+	 * tiles and their borders again, then unions the pieces that were taken
+	 * apart or added along the links and gives the blobs they make their ids.
+	 */
+	private void update() {
+		frameCount++;
+		touchedCount = 0;
+		dirtyCount = 0;
+		// the pieces of a dirty tile go away, so their blobs are taken apart
+		for (int t = 0; t < tiles.length; t++) {
+			if (dirty[t]) {
+				Tile tile = tiles[t];
+				for (int p = 0; p < tile.count; p++) {
+					dissolve(tile.slots[p]);
+					tile.oldIds[p] = oldIds[tile.slots[p]];
+				}
+				for (int p = 0; p < tile.count; p++) {
+					slotTiles[tile.slots[p]] = -1;
+					freeSlots[freeCount++] = tile.slots[p];
+				}
+				dirtyCount++;
+			}
+		}
+
+		int added = 0;
+		for (int t = 0; t < tiles.length; t++) {
+			if (dirty[t]) {
+				label(tiles[t]);
+				added += tiles[t].count;
+			}
+		}
+		makeRoom(added);
+		for (int t = 0; t < tiles.length; t++) {
+			if (dirty[t]) {
+				Tile tile = tiles[t];
+				for (int p = 0; p < tile.count; p++) {
+					int slot = freeSlots[--freeCount];
+					tile.slots[p] = slot;
+					place(slot, t, p);
+					dissolved[slot] = frameCount;
+					touch(slot);
+				}
+			}
+		}
+
+		// a border is linked again if the tile on either side was labeled,
+		// and the blobs across it may join the new pieces
+		for (int t = 0; t < tiles.length; t++) {
+			int tx = t % tilesX;
+			int ty = t / tilesX;
+			if (tx + 1 < tilesX && (dirty[t] || dirty[t + 1])) {
+				linkRight(tiles[t], tiles[t + 1]);
+				dissolve(tiles[t], tiles[t].right, tiles[t + 1]);
+			}
+			if (ty + 1 < tilesY && (dirty[t] || dirty[t + tilesX])) {
+				linkDown(tiles[t], tiles[t + tilesX]);
+				dissolve(tiles[t], tiles[t].down, tiles[t + tilesX]);
+			}
+		}
+
+		// every link of a loose piece is unioned again, the links between
+		// untouched pieces are already in their sets
+		for (int i = 0; i < touchedCount; i++) {
+			int t = slotTiles[touched[i]];
+			if (t >= 0 && joined[t] != frameCount) {
+				joined[t] = frameCount;
+				join(t);
+			}
+		}
+		identify();
+	}
+
+	/**
+	 * @param slot
+	 *            the slot of a piece
+	 *
+	 *            Puts every piece of the blob of the slot back in a set of
+	 *            its own, remembering the id of the blob for identify(). Does
+	 *            nothing if the blob was taken apart already this frame.
+	 */
+	private void dissolve(int slot) {
+		int root = blobs.find(slot);
+		if (dissolved[root] == frameCount) {
+			return;
+		}
+		removeLive(root);
+		int id = blobIds[root];
+		int from = touchedCount;
+		PrimitiveIterator.OfInt members = blobs.get(root);
+		while (members.hasNext()) {
+			int member = members.nextInt();
+			oldIds[member] = id;
+			dissolved[member] = frameCount;
+			touch(member);
+		}
+		blobs.dissolve(root);
+		for (int i = from; i < touchedCount; i++) {
+			place(touched[i], slotTiles[touched[i]], slotPieces[touched[i]]);
+		}
+	}
+
+	/**
+	 * @param a
+	 *            a tile
+	 * @param links
+	 *            the links across its right or bottom border
+	 * @param b
+	 *            the tile on the other side
+	 *
+	 *            Takes apart the blobs of both sides of every link.
+	 */
+	private void dissolve(Tile a, Links links, Tile b) {
+		for (int i = 0; i < links.count; i++) {
+			dissolve(a.slots[links.pairs[2 * i]]);
+			dissolve(b.slots[links.pairs[2 * i + 1]]);
+		}
+	}
+
+	/**
+	 * @param root
+	 *            the root of a blob of the latest frame
+	 */
+	private void addLive(int root) {
+		livePlaces[root] = liveCount;
+		liveRoots[liveCount++] = root;
+	}
+
+	/**
+	 * @param root
+	 *            the root of a blob being taken apart, its place is taken by
+	 *            the last root
+	 */
+	private void removeLive(int root) {
+		int last = liveRoots[--liveCount];
+		liveRoots[livePlaces[root]] = last;
+		livePlaces[last] = livePlaces[root];
+	}
+
+	/**
+	 * @param slot
+	 *            a slot taken apart or added in this frame
+	 */
+	private void touch(int slot) {
+		if (touchedCount == touched.length) {
+			touched = Arrays.copyOf(touched, 2 * touched.length);
+		}
+		touched[touchedCount++] = slot;
+	}
+
+	/**
+	 * @param slot
+	 *            a slot in a set of its own
+	 * @param t
+	 *            the tile of the piece in the slot
+	 * @param p
+	 *            the piece in the tile
+	 *
+	 *            Copies the numbers of the piece to the slot.
+	 */
+	private void place(int slot, int t, int p) {
+		Tile tile = tiles[t];
+		slotTiles[slot] = t;
+		slotPieces[slot] = p;
+		sizes[slot] = tile.sizes[p];
+		lefts[slot] = tile.lefts[p];
+		tops[slot] = tile.tops[p];
+		rights[slot] = tile.rights[p];
+		bottoms[slot] = tile.bottoms[p];
+		firsts[slot] = tile.firsts[p];
+		System.arraycopy(tile.sums, Tile.SUMS * p, sums, Tile.SUMS * slot, Tile.SUMS);
+	}
+
+	/**
+	 * @param root
+	 *            the root of the unioned blob
+	 * @param other
+	 *            the old root of the blob joined into it
+	 */
+	private void merge(int root, int other) {
+		sizes[root] += sizes[other];
+		lefts[root] = Math.min(lefts[root], lefts[other]);
+		tops[root] = Math.min(tops[root], tops[other]);
+		rights[root] = Math.max(rights[root], rights[other]);
+		bottoms[root] = Math.max(bottoms[root], bottoms[other]);
+		firsts[root] = Math.min(firsts[root], firsts[other]);
+		for (int s = 0; s < Tile.SUMS; s++) {
+			sums[Tile.SUMS * root + s] += sums[Tile.SUMS * other + s];
+		}
+	}
+
+	/**
+	 * @param added
+	 *            the number of pieces about to get a slot
+	 *
+	 *            If there are not enough free slots, takes every blob apart
+	 *            and moves the pieces of the clean tiles to bigger arrays. The
+	 *            arrays double each time, so this costs O(1) per piece over
+	 *            many frames.
+	 */
+	private void makeRoom(int added) {
+		if (freeCount >= added) {
+			return;
+		}
+		int used = 0;
+		for (int t = 0; t < tiles.length; t++) {
+			if (!dirty[t]) {
+				Tile tile = tiles[t];
+				for (int p = 0; p < tile.count; p++) {
+					int slot = tile.slots[p];
+					tile.oldIds[p] = dissolved[slot] == frameCount ? oldIds[slot] : blobIds[blobs.find(slot)];
+				}
+				used += tile.count;
+			}
+		}
+
+		int capacity = Math.max(2 * blobs.sizeDisjoint(), used + added);
+		blobs = new IntDisjointSets(capacity);
+		blobs.setAggregate(this::merge);
+		slotTiles = new int[capacity];
+		slotPieces = new int[capacity];
+		freeSlots = new int[capacity];
+		blobIds = new int[capacity];
+		sizes = new long[capacity];
+		lefts = new int[capacity];
+		tops = new int[capacity];
+		rights = new int[capacity];
+		bottoms = new int[capacity];
+		firsts = new int[capacity];
+		sums = new long[Tile.SUMS * capacity];
+		oldIds = new int[capacity];
+		dissolved = new int[capacity];
+		counted = new int[capacity];
+		liveRoots = new int[capacity];
+		livePlaces = new int[capacity];
+
+		// every piece left is loose now
+		liveCount = 0;
+		touchedCount = 0;
+		int slot = 0;
+		for (int t = 0; t < tiles.length; t++) {
+			if (!dirty[t]) {
+				Tile tile = tiles[t];
+				for (int p = 0; p < tile.count; p++, slot++) {
+					tile.slots[p] = slot;
+					place(slot, t, p);
+					oldIds[slot] = tile.oldIds[p];
+					dissolved[slot] = frameCount;
+					touch(slot);
+				}
+			}
+		}
+		Arrays.fill(slotTiles, slot, capacity, -1);
+		freeCount = 0;
+		for (int f = capacity - 1; f >= slot; f--) {
+			freeSlots[freeCount++] = f;
+		}
+	}
+
+	/**
+	 * @param tile
+	 *            a tile whose pixels may have changed
+	 *
+	 *            Thresholds and labels the tile again. The pixels it shares
+	 *            with the blobs of the last frame are counted, by id, for
+	 *            identify().
+	 */
+	private void label(Tile tile) {
+		int w = tile.width;
+		int h = tile.height;
+		Detector.threshMask(new TileRows(tile), blobColor, okDist, tileMask);
+		tileSets.reset();
+		RasterLabeler.label(new MaskRows(tileMask, w, h), tileSets);
+
+		// number the pieces in the order of their first pixel
+		Arrays.fill(compact, 0, w * h, -1);
+		int count = 0;
+		for (int i = 0; i < w * h; i++) {
+			if (tileMask[i] == Detector.FOREGROUND) {
+				int root = tileSets.find(i);
+				if (compact[root] < 0) {
+					compact[root] = count++;
+				}
+			}
+		}
+		tile.resize(count);
+
+		// count the overlap with the pieces of the last frame, then replace
+		// the labels
+		tile.votes.clear();
+		for (int i = 0; i < w * h; i++) {
+			int label = tileMask[i] == Detector.FOREGROUND ? compact[tileSets.find(i)] : -1;
+			int old = tile.labels[i];
+			if (label >= 0 && old >= 0 && tile.oldIds[old] > 0) {
+				tile.votes.add(label, tile.oldIds[old]);
+			}
+			tile.labels[i] = label;
+			if (label >= 0) {
+				int x = tile.x0 + i % w;
+				int y = tile.y0 + i / w;
+				tile.add(label, x, y, width * y + x, pixels[width * y + x]);
+			}
+		}
+	}
+
+	/**
+	 * @param left
+	 *            a tile
+	 * @param right
+	 *            the tile to the right of it
+	 *
+	 *            Lists the pairs of pieces touching across the border.
+	 */
+	private static void linkRight(Tile left, Tile right) {
+		left.right.clear();
+		for (int r = 0; r < left.height; r++) {
+			int a = left.labels[r * left.width + left.width - 1];
+			int b = right.labels[r * right.width];
+			if (a >= 0 && b >= 0) {
+				left.right.add(a, b);
+			}
+		}
+	}
+
+	/**
+	 * @param top
+	 *            a tile
+	 * @param bottom
+	 *            the tile below it
+	 *
+	 *            Lists the pairs of pieces touching across the border.
+	 */
+	private static void linkDown(Tile top, Tile bottom) {
+		top.down.clear();
+		int last = (top.height - 1) * top.width;
+		for (int c = 0; c < top.width; c++) {
+			int a = top.labels[last + c];
+			int b = bottom.labels[c];
+			if (a >= 0 && b >= 0) {
+				top.down.add(a, b);
+			}
+		}
+	}
+
+	/**
+	 * @param t
+	 *            a tile with loose pieces
+	 *
+	 *            Unions the pieces along the links across all four borders of
+	 *            the tile.
+	 */
+	private void join(int t) {
+		Tile tile = tiles[t];
+		int tx = t % tilesX;
+		int ty = t / tilesX;
+		if (tx + 1 < tilesX) {
+			join(tile, tile.right, tiles[t + 1]);
+		}
+		if (ty + 1 < tilesY) {
+			join(tile, tile.down, tiles[t + tilesX]);
+		}
+		if (tx > 0) {
+			join(tiles[t - 1], tiles[t - 1].right, tile);
+		}
+		if (ty > 0) {
+			join(tiles[t - tilesX], tiles[t - tilesX].down, tile);
+		}
+	}
+
+	/**
+	 * @param a
+	 *            a tile
+	 * @param links
+	 *            the links across its right or bottom border
+	 * @param b
+	 *            the tile on the other side
+	 */
+	private void join(Tile a, Links links, Tile b) {
+		for (int i = 0; i < links.count; i++) {
+			int rootA = blobs.find(a.slots[links.pairs[2 * i]]);
+			int rootB = blobs.find(b.slots[links.pairs[2 * i + 1]]);
+			if (rootA != rootB) {
+				blobs.union(rootA, rootB);
+			}
+		}
+	}
+
+	/**
+	 * Gives every blob made of touched pieces the id of the blob of the last
+	 * frame it shares the most pixels with, if no bigger share took that id
+	 * already, or a new id. Only the ids of the blobs taken apart are handed
+	 * out again, so the untouched blobs keep theirs.
+	 */
+	private void identify() {
+		// the pixels every blob shares with every old id
+		shares.clear();
+		int from = liveCount;
+		for (int i = 0; i < touchedCount; i++) {
+			int slot = touched[i];
+			int t = slotTiles[slot];
+			if (t < 0) {
+				continue;
+			}
+			int root = blobs.find(slot);
+			if (counted[root] != frameCount) {
+				counted[root] = frameCount;
+				blobIds[root] = 0;
+				addLive(root);
+			}
+			if (!dirty[t] && oldIds[slot] > 0) {
+				shares.add(root, oldIds[slot], tiles[t].sizes[slotPieces[slot]]);
+			}
+		}
+		for (int t = 0; t < tiles.length; t++) {
+			if (dirty[t]) {
+				Votes votes = tiles[t].votes;
+				for (int v = 0; v < votes.count; v++) {
+					shares.add(blobs.find(tiles[t].slots[votes.pieces[v]]), votes.ids[v], votes.pixels[v]);
+				}
+			}
+		}
+
+		// the biggest shares first, ties to the older id, then to the blob
+		// that comes first
+		if (taken.length < nextId) {
+			taken = Arrays.copyOf(taken, Math.max(nextId, 2 * taken.length));
+		}
+		if (shares.count > 0) {
+			TopK candidates = new TopK(shares.count);
+			for (int i = 0; i < shares.count; i++) {
+				candidates.offer(shares.pixels[i], ((long) shares.ids[i] << 31) | firsts[shares.roots[i]], i);
+			}
+			candidates.sort();
+			for (int c = 0; c < candidates.size(); c++) {
+				int i = (int) candidates.getId(c);
+				int root = shares.roots[i];
+				int id = shares.ids[i];
+				if (blobIds[root] == 0 && taken[id] != frameCount) {
+					blobIds[root] = id;
+					taken[id] = frameCount;
+				}
+			}
+		}
+
+		// new blobs are numbered in raster order of their first pixel
+		int unnamed = 0;
+		for (int i = from; i < liveCount; i++) {
+			if (blobIds[liveRoots[i]] == 0) {
+				unnamed++;
+			}
+		}
+		if (unnamed > 0) {
+			TopK order = new TopK(unnamed);
+			for (int i = from; i < liveCount; i++) {
+				int root = liveRoots[i];
+				if (blobIds[root] == 0) {
+					order.offer(0, firsts[root], root);
+				}
+			}
+			order.sort();
+			for (int c = 0; c < order.size(); c++) {
+				blobIds[(int) order.getId(c)] = nextId++;
+			}
+		}
+	}
+
+	/**
+	 * @param k
+	 *            the number of blobs we are interested in
+	 * @return the k largest blobs of the latest frame with their ids, ranked
+	 *         the same way Detector ranks them
+	 */
+	public List<Track> getTracks(int k) {
+		TopK best = new TopK(k);
+		for (int i = 0; i < liveCount; i++) {
+			int root = liveRoots[i];
+			best.offer(sizes[root], firsts[root], root);
+		}
+		best.sort();
+		ArrayList<Track> tracks = new ArrayList<Track>();
+		for (int i = 0; i < best.size(); i++) {
+			int root = (int) best.getId(i);
+			int s = Tile.SUMS * root;
+			Blob blob = new Blob(sizes[root], lefts[root], tops[root], rights[root], bottoms[root],
+					firsts[root] % width, firsts[root] / width, sums[s], sums[s + 1], sums[s + 2], sums[s + 3],
+					sums[s + 4]);
+			tracks.add(new Track(blobIds[root], blob));
+		}
+		return tracks;
+	}
+
+	/**
+	 * @return the number of blobs in the latest frame
+	 */
+	public int getBlobCount() {
+		return liveCount;
+	}
+
+	/**
+	 * @return the number of tiles labeled again for the latest frame
+	 */
+	public int getDirtyTileCount() {
+		return dirtyCount;
+	}
+
+	/**
+	 * @return the number of tiles in a frame
+	 */
+	public int getTileCount() {
+		return tiles == null ? 0 : tiles.length;
+	}
+
+	/**
+	 * A blob of a frame and the id it keeps from frame to frame
+	 */
+	public static class Track {
+		private int id;
+		private Blob blob;
+
+		/**
+		 * @param id
+		 *            the id of the blob
+		 * @param blob
+		 *            the blob in the latest frame
+		 */
+		public Track(int id, Blob blob) {
+			this.id = id;
+			this.blob = blob;
+		}
+
+		/**
+		 * @return the id of the blob, the same in every frame it is in
+		 */
+		public int getId() {
+			return id;
+		}
+
+		/**
+		 * @return the blob in the latest frame
+		 */
+		public Blob getBlob() {
+			return blob;
+		}
+
+		/**
+		 * @return the id, size and bounding box of the blob
+		 */
+		public String toString() {
+			return "#" + id + ": " + blob;
+		}
+	}
+
+	/**
+	 * The labels of the pixels of one tile, and the numbers of its pieces
+	 */
+	private static class Tile {
+		// sums kept for every piece: x, y, red, green, blue
+		private static final int SUMS = 5;
+
+		private int x0;
+		private int y0;
+		private int width;
+		private int height;
+		private int[] labels; // the piece of every pixel, -1 for background
+		private int count; // the number of pieces
+		private int[] sizes = new int[0];
+		private int[] lefts = new int[0];
+		private int[] tops = new int[0];
+		private int[] rights = new int[0];
+		private int[] bottoms = new int[0];
+		private int[] firsts = new int[0];
+		private long[] sums = new long[0];
+		private int[] oldIds = new int[0]; // the blob id of every piece last frame
+		private int[] slots = new int[0]; // the slot of every piece
+		private Links right = new Links(); // (this piece, piece to the right)
+		private Links down = new Links(); // (this piece, piece below)
+		private Votes votes = new Votes(); // pixels every piece shares with every old id
+
+		/**
+		 * @param x0
+		 *            the x of the left column
+		 * @param y0
+		 *            the y of the top row
+		 * @param width
+		 *            the width of the tile
+		 * @param height
+		 *            the height of the tile
+		 */
+		public Tile(int x0, int y0, int width, int height) {
+			this.x0 = x0;
+			this.y0 = y0;
+			this.width = width;
+			this.height = height;
+			this.labels = new int[width * height];
+			Arrays.fill(labels, -1);
+		}
+
+		/**
+		 * @param count
+		 *            the number of pieces the tile has now
+		 *
+		 *            Makes room for the pieces and clears their numbers. The
+		 *            old ids are kept, since the old labels still point at
+		 *            them until label() is done.
+		 */
+		public void resize(int count) {
+			if (sizes.length < count) {
+				int capacity = Math.max(count, 2 * sizes.length);
+				sizes = new int[capacity];
+				lefts = new int[capacity];
+				tops = new int[capacity];
+				rights = new int[capacity];
+				bottoms = new int[capacity];
+				firsts = new int[capacity];
+				sums = new long[SUMS * capacity];
+				oldIds = Arrays.copyOf(oldIds, capacity);
+				slots = new int[capacity];
+			}
+			this.count = count;
+			Arrays.fill(sizes, 0, count, 0);
+			Arrays.fill(sums, 0, SUMS * count, 0);
+		}
+
+		/**
+		 * @param piece
+		 *            a piece of the tile
+		 * @param x
+		 *            the x of one of its pixels
+		 * @param y
+		 *            the y of the pixel
+		 * @param id
+		 *            the id of the pixel in the frame
+		 * @param rgb
+		 *            the color of the pixel
+		 */
+		public void add(int piece, int x, int y, int id, int rgb) {
+			if (sizes[piece] == 0) {
+				lefts[piece] = x;
+				tops[piece] = y;
+				rights[piece] = x;
+				bottoms[piece] = y;
+				firsts[piece] = id;
+			} else {
+				lefts[piece] = Math.min(lefts[piece], x);
+				rights[piece] = Math.max(rights[piece], x);
+				bottoms[piece] = Math.max(bottoms[piece], y);
+			}
+			sizes[piece]++;
+			int s = SUMS * piece;
+			sums[s] += x;
+			sums[s + 1] += y;
+			sums[s + 2] += (rgb >> 16) & 0xff;
+			sums[s + 3] += (rgb >> 8) & 0xff;
+			sums[s + 4] += rgb & 0xff;
+		}
+	}
+
+	/**
+	 * Pairs of pieces touching across one border of a tile. Rows next to each
+	 * other mostly give the same pair, so a pair is not added twice in a row.
+	 */
+	private static class Links {
+		private int[] pairs = new int[8];
+		private int count;
+
+		/**
+		 * Forgets every pair
+		 */
+		public void clear() {
+			count = 0;
+		}
+
+		/**
+		 * @param a
+		 *            the piece on this side
+		 * @param b
+		 *            the piece on the other side
+		 */
+		public void add(int a, int b) {
+			if (count > 0 && pairs[2 * count - 2] == a && pairs[2 * count - 1] == b) {
+				return;
+			}
+			if (pairs.length < 2 * count + 2) {
+				pairs = Arrays.copyOf(pairs, 2 * pairs.length);
+			}
+			pairs[2 * count] = a;
+			pairs[2 * count + 1] = b;
+			count++;
+		}
+	}
+
+	/**
+	 * The pixels the pieces of a relabeled tile share with the blobs of the
+	 * last frame, as (piece, old id, pixels). Pixels next to each other mostly
+	 * give the same pair, so a pair seen again right away is counted in the
+	 * same entry. The same pair can still be in several entries.
+	 */
+	private static class Votes {
+		private int[] pieces = new int[8];
+		private int[] ids = new int[8];
+		private int[] pixels = new int[8];
+		private int count;
+
+		/**
+		 * Forgets every entry
+		 */
+		public void clear() {
+			count = 0;
+		}
+
+		/**
+		 * @param piece
+		 *            a piece of the tile
+		 * @param id
+		 *            the id of the blob one of its pixels was in last frame
+		 */
+		public void add(int piece, int id) {
+			if (count > 0 && pieces[count - 1] == piece && ids[count - 1] == id) {
+				pixels[count - 1]++;
+				return;
+			}
+			if (count == pieces.length) {
+				pieces = Arrays.copyOf(pieces, 2 * count);
+				ids = Arrays.copyOf(ids, 2 * count);
+				pixels = Arrays.copyOf(pixels, 2 * count);
+			}
+			pieces[count] = piece;
+			ids[count] = id;
+			pixels[count] = 1;
+			count++;
+		}
+	}
+
+	/**
+	 * The pixels every blob of the latest frame shares with every id of the
+	 * last one, summed by (root, id) in an open addressing hash table so no
+	 * key or sum is boxed. The entries are kept in the order they were first
+	 * added, so they can be walked without looking at the buckets.
+	 */
+	private static class Shares {
+		private int[] buckets = new int[16]; // an entry + 1, 0 if empty
+		private int[] roots = new int[8];
+		private int[] ids = new int[8];
+		private long[] pixels = new long[8];
+		private int count;
+
+		/**
+		 * Forgets every entry
+		 */
+		public void clear() {
+			Arrays.fill(buckets, 0);
+			count = 0;
+		}
+
+		/**
+		 * @param root
+		 *            the root of a blob of the latest frame
+		 * @param id
+		 *            the id of a blob of the last frame
+		 * @param shared
+		 *            more pixels the two share
+		 */
+		public void add(int root, int id, long shared) {
+			int b = find(root, id);
+			if (buckets[b] != 0) {
+				pixels[buckets[b] - 1] += shared;
+				return;
+			}
+			if (count == roots.length) {
+				roots = Arrays.copyOf(roots, 2 * count);
+				ids = Arrays.copyOf(ids, 2 * count);
+				pixels = Arrays.copyOf(pixels, 2 * count);
+			}
+			roots[count] = root;
+			ids[count] = id;
+			pixels[count] = shared;
+			count++;
+			buckets[b] = count;
+			// at most half the buckets are used, so probes stay short
+			if (2 * count > buckets.length) {
+				buckets = new int[2 * buckets.length];
+				for (int i = 0; i < count; i++) {
+					buckets[find(roots[i], ids[i])] = i + 1;
+				}
+			}
+		}
+
+		/**
+		 * @param root
+		 *            the root of a blob
+		 * @param id
+		 *            an old id
+		 * @return the bucket of the pair, or the empty bucket it would go in
+		 */
+		private int find(int root, int id) {
+			int mask = buckets.length - 1;
+			int hash = (31 * root + id) * 0x9E3779B9;
+			int b = (hash ^ hash >>> 16) & mask;
+			while (buckets[b] != 0 && (roots[buckets[b] - 1] != root || ids[buckets[b] - 1] != id)) {
+				b = (b + 1) & mask;
+			}
+			return b;
+		}
+	}
+
+	/**
+	 * The pixels of a tile of the latest frame, as rows of their own
+	 */
+	private class TileRows implements PixelRows {
+		private Tile tile;
+
+		/**
+		 * @param tile
+		 *            the tile to read
+		 */
+		public TileRows(Tile tile) {
+			this.tile = tile;
+		}
+
+		/**
+		 * @return the width of the tile
+		 */
+		public int getWidth() {
+			return tile.width;
+		}
+
+		/**
+		 * @return the height of the tile
+		 */
+		public int getHeight() {
+			return tile.height;
+		}
+
+		/**
+		 * @param y
+		 *            the row of the tile to read
+		 * @param row
+		 *            filled with the packed RGB value of every pixel in the row
+		 */
+		public void read(int y, int[] row) {
+			System.arraycopy(pixels, width * (tile.y0 + y) + tile.x0, row, 0, tile.width);
+		}
+	}
+
+	/**
+	 * @param args
+	 *            command line arguments Main method
+	 */
+	public static void main(String[] args) {
+		// two red squares on white, then the first one moves right a bit and
+		// a third one shows up
+		BufferedImage frame = new BufferedImage(256, 256, BufferedImage.TYPE_INT_RGB);
+		fill(frame, 0, 0, 256, 256, Color.WHITE);
+		fill(frame, 10, 10, 30, 30, Color.RED);
+		fill(frame, 150, 150, 60, 60, Color.RED);
+		FrameTracker tracker = new FrameTracker(Color.RED, 10, 32);
+		tracker.nextFrame(frame);
+		System.out.println(tracker.getTracks(5)); // #2 (3600 pixels), #1 (900)
+
+		fill(frame, 10, 10, 30, 30, Color.WHITE);
+		fill(frame, 14, 10, 30, 30, Color.RED);
+		fill(frame, 100, 20, 5, 5, Color.RED);
+		tracker.nextFrame(frame);
+		System.out.println(tracker.getTracks(5)); // #2, #1 moved, #3 new
+		System.out.println(tracker.getDirtyTileCount() + "/" + tracker.getTileCount() + " tiles labeled"); // 5/64
+	}
+
+	/**
+	 * @param image
+	 *            the picture to draw on
+	 * @param x
+	 *            the left of the rectangle
+	 * @param y
+	 *            the top of the rectangle
+	 * @param w
+	 *            the width of the rectangle
+	 * @param h
+	 *            the height of the rectangle
+	 * @param c
+	 *            the color to fill it with
+	 */
+	private static void fill(BufferedImage image, int x, int y, int w, int h, Color c) {
+		for (int j = y; j < y + h; j++) {
+			for (int i = x; i < x + w; i++) {
+				image.setRGB(i, j, c.getRGB());
+			}
+		}
+	}
+}
@@ -0,0 +1,392 @@
+/**
+ * A primitive version of DisjointSets<T> for sets of int ids 0..n-1
+ * using union by size (or rank) and iterative path compression (or
+ * halving/splitting). Instead of one Set and one Node per element, the
+ * members of every set are kept in a circular "next member" int array
+ * that is spliced in O(1) on union.
+ */
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.stream.IntStream;
+
+public class IntDisjointSets {
+
+	private int[] s; // the sets
+	private int[] next; // the next member of the same set (circular)
+	private byte[] rank; // tree heights, only used for union by rank
+	private int size;
+	private int components; // the number of sets
+	private FindStrategy findStrategy;
+	private UnionStrategy unionStrategy;
+	private RootAggregate aggregate; // per-set values merged on union
+	private UnionFindStats stats; // counters, null unless setStats() was called
+
+	/**
+	 * @param n
+	 *            the number of elements, each starts in its own set
+	 */
+	public IntDisjointSets(int n) {
+		this(n, FindStrategy.COMPRESSION, UnionStrategy.SIZE);
+	}
+
+	/**
+	 * @param n
+	 *            the number of elements, each starts in its own set
+	 * @param findStrategy
+	 *            how find shortens paths
+	 * @param unionStrategy
+	 *            how union picks the new root
+	 */
+	public IntDisjointSets(int n, FindStrategy findStrategy, UnionStrategy unionStrategy) {
+		if (n < 0) {
+			throw new IllegalArgumentException();
+		}
+		if (findStrategy == null || unionStrategy == null) {
+			throw new NullPointerException();
+		}
+		this.findStrategy = findStrategy;
+		this.unionStrategy = unionStrategy;
+		if (unionStrategy == UnionStrategy.RANK) {
+			rank = new byte[n];
+		}
+		size = n;
+		s = new int[n];
+		next = new int[n];
+		reset();
+	}
+
+	/**
+	 * Puts every element back in its own set, reusing the arrays. The
+	 * aggregate is kept and must be reset by its owner.
+	 */
+	public void reset() {
+		for (int i = 0; i < size; i++) {
+			s[i] = -1;
+			next[i] = i;
+		}
+		if (rank != null) {
+			Arrays.fill(rank, 0, size, (byte) 0);
+		}
+		components = size;
+	}
+
+	/**
+	 * @param n
+	 *            the number of elements from now on, each in its own set
+	 * 
+	 *            Like reset(), but the arrays only grow when n is more than
+	 *            they hold, so the sets can be reused for a different number
+	 *            of elements every time.
+	 */
+	public void reset(int n) {
+		if (n < 0) {
+			throw new IllegalArgumentException();
+		}
+		if (n > s.length) {
+			s = new int[n];
+			next = new int[n];
+			if (rank != null) {
+				rank = new byte[n];
+			}
+		}
+		size = n;
+		reset();
+	}
+
+	/**
+	 * @param root1
+	 *            the root of the first set to be joined
+	 * @param root2
+	 *            the root of the second set to be joined
+	 * @return the root of the unioned set O(1) time, plus whatever the
+	 *         aggregate takes to merge
+	 */
+	public int union(int root1, int root2) {
+		// throw IllegalArgumentException() if non-roots provided
+		assertIsRoot(root1);
+		assertIsRoot(root2);
+		if (stats != null) {
+			stats.countUnion(-(s[root1] + s[root2]));
+		}
+
+		// splice the two circular member lists together
+		int temp = next[root1];
+		next[root1] = next[root2];
+		next[root2] = temp;
+
+		int newRoot = root1;
+		int oldRoot = root2;
+		if (unionStrategy == UnionStrategy.RANK) {
+			// the root of the taller tree is the new root
+			if (rank[root2] > rank[root1]) {
+				newRoot = root2;
+				oldRoot = root1;
+			} else if (rank[root1] == rank[root2]) {
+				rank[root1]++;
+			}
+		} else if (s[root2] < s[root1]) {
+			// if two sets are equal, root1 is the new root
+			newRoot = root2;
+			oldRoot = root1;
+		}
+		s[newRoot] = s[newRoot] + s[oldRoot];
+		s[oldRoot] = newRoot;
+		components--;
+		if (aggregate != null) {
+			aggregate.merge(newRoot, oldRoot);
+		}
+		return newRoot;
+	}
+
+	/**
+	 * @param aggregate
+	 *            kept up to date on every union from now on, null for none
+	 */
+	public void setAggregate(RootAggregate aggregate) {
+		this.aggregate = aggregate;
+	}
+
+	/**
+	 * @param stats
+	 *            counts every find and union from now on, null for none
+	 */
+	public void setStats(UnionFindStats stats) {
+		this.stats = stats;
+	}
+
+	/**
+	 * @param x
+	 *            an item in a set whose root we want
+	 * @return the root of the set
+	 */
+	public int find(int x) {
+		assertIsItem(x);
+		// the parent links walked, counted as they are walked
+		int length = 0;
+		switch (findStrategy) {
+		case HALVING:
+			while (s[x] >= 0) {
+				if (s[s[x]] >= 0) {
+					s[x] = s[s[x]];
+				}
+				x = s[x];
+				length++;
+			}
+			countFind(length);
+			return x;
+		case SPLITTING:
+			while (s[x] >= 0) {
+				int parent = s[x];
+				if (s[parent] >= 0) {
+					s[x] = s[parent];
+				}
+				x = parent;
+				length++;
+			}
+			countFind(length);
+			return x;
+		default:
+			// Find the root, then point the whole path at it
+			int root = x;
+			while (s[root] >= 0) {
+				root = s[root];
+				length++;
+			}
+			while (x != root) {
+				int parent = s[x];
+				s[x] = root;
+				x = parent;
+			}
+			countFind(length);
+			return root;
+		}
+	}
+
+	/**
+	 * @param length
+	 *            the parent links a find walked, given to the counters if
+	 *            there are any
+	 */
+	private void countFind(int length) {
+		if (stats != null) {
+			stats.countFind(length);
+		}
+	}
+
+	/**
+	 * @param root
+	 *            the root of the set to be returned
+	 * @return an iterator over the ids in the set of the root, empty if root
+	 *         is no longer a root O(1) time
+	 */
+	public PrimitiveIterator.OfInt get(int root) {
+		assertIsItem(root);
+		final int first = root;
+		final int count = s[root] < 0 ? -s[root] : 0;
+		return new PrimitiveIterator.OfInt() {
+			int current = first;
+			int left = count;
+
+			/**
+			 * @return the next id in the set
+			 */
+			public int nextInt() {
+				if (!hasNext()) {
+					throw new NoSuchElementException("No more items!");
+				}
+				int oldCurrent = current;
+				current = next[current];
+				left--;
+				return oldCurrent;
+			}
+
+			/**
+			 * @return true if there is another id in the set and false if not
+			 */
+			public boolean hasNext() {
+				return left > 0;
+			}
+		};
+	}
+
+	/**
+	 * @param root
+	 *            the root of the set to be split up
+	 *
+	 *            Puts every member of the set back in its own set, in time
+	 *            linear in the size of the set. The aggregate is not told,
+	 *            so its owner must reset the values of the members.
+	 */
+	public void dissolve(int root) {
+		assertIsRoot(root);
+		components += -s[root] - 1;
+		int member = root;
+		for (int left = -s[root]; left > 0; left--) {
+			int following = next[member];
+			s[member] = -1;
+			next[member] = member;
+			if (rank != null) {
+				rank[member] = 0;
+			}
+			member = following;
+		}
+	}
+
+	/**
+	 * @return the roots of all the sets, in increasing order. Roots are read
+	 *         straight from the parent array without any find, and the
+	 *         stream can be made parallel.
+	 */
+	public IntStream roots() {
+		return IntStream.range(0, size).filter(i -> s[i] < 0);
+	}
+
+	/**
+	 * @param action
+	 *            given the root and size of every set, in increasing order
+	 *            of roots
+	 * 
+	 *            Goes over the parent array once, O(n) time and no find.
+	 */
+	public void forEachComponent(ComponentAction action) {
+		for (int i = 0; i < size; i++) {
+			if (s[i] < 0) {
+				action.accept(i, -s[i]);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of sets, kept up by union() and dissolve()
+	 */
+	public int getComponentCount() {
+		return components;
+	}
+
+	/**
+	 * @return the number of sets, counted again from the parent array
+	 * 
+	 *         The count kept by union() is a plain int, so after unions made
+	 *         from several threads at once (as in
+	 *         RasterLabeler.labelParallel) it has to be counted again.
+	 */
+	public int countComponents() {
+		int count = 0;
+		for (int i = 0; i < size; i++) {
+			if (s[i] < 0) {
+				count++;
+			}
+		}
+		components = count;
+		return count;
+	}
+
+	/**
+	 * @param root
+	 *            the root in question
+	 */
+	private void assertIsRoot(int root) {
+		assertIsItem(root);
+		if (s[root] >= 0) {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * @param x
+	 *            the item in question
+	 */
+	private void assertIsItem(int x) {
+		if (x < 0 || x >= size) {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * @param i
+	 *            the root of the set whose size we want returned
+	 * @return the size of the set
+	 */
+	public int size(int i) {
+		assertIsRoot(i);
+		return s[i] * -1;
+	}
+
+	/**
+	 * @return how many elements are in the disjoint set, see
+	 *         getComponentCount() for the number of sets
+	 */
+	public int sizeDisjoint() {
+		return size;
+	}
+
+	/**
+	 * @param args
+	 *            command line arguments Main method
+	 */
+	public static void main(String[] args) {
+		IntDisjointSets ds = new IntDisjointSets(10);
+		System.out.println(ds.find(0)); // should be 0
+		System.out.println(ds.union(0, 1)); // should be 0
+		System.out.println(ds.find(1)); // should be 0
+		System.out.println(ds.union(0, 2)); // should be 0
+		System.out.println("The size is: " + ds.size(0)); // should be 3
+		System.out.println(ds.union(3, 4)); // should be 3
+		System.out.println(ds.union(3, 0)); // should be 0
+		PrimitiveIterator.OfInt it = ds.get(0);
+		while (it.hasNext()) {
+			System.out.print(it.nextInt() + " "); // should be 0, 1, 2, 3, 4 in some order
+		}
+		System.out.println();
+		System.out.println(ds.get(1).hasNext()); // should be false
+
+		IntDisjointSets byRank = new IntDisjointSets(10, FindStrategy.HALVING, UnionStrategy.RANK);
+		System.out.println(byRank.union(0, 1)); // should be 0
+		System.out.println(byRank.union(2, 0)); // should be 0
+		System.out.println(byRank.find(2)); // should be 0
+		System.out.println("The size is: " + byRank.size(0)); // should be 3
+		byRank.reset(20);
+		System.out.println(byRank.find(2) + " " + byRank.size(19)); // should be 2 1
+	}
+}
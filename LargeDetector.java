@@ -0,0 +1,245 @@
+/**
+ * Detects blobs in pictures of more than 2^31 pixels, where the int pixel
+ * ids of Detector run out. The picture is thresholded into a BitMask (1 bit
+ * a pixel on the heap) and labeled into a LongDisjointSets with long pixel
+ * ids from Detector.getLongId(), kept off the heap in direct buffers or in
+ * a memory-mapped file. Unlike StreamingDetector every pixel keeps its
+ * label, so a blob can still be looked up after detect().
+ *
+ * Only pixels of the color are ever unioned, so background is never
+ * written to the disjoint sets. In a mapped file, pages of nothing but
+ * background are never even touched. The root of a blob is its first pixel
+ * in raster order, so the blobs rank the same as in Detector.
+ */
+import java.awt.Color;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class LargeDetector implements Closeable {
+	private PixelRows rows; // the packed RGB values of the picture
+	private Color blobColor; // the color of the blob we are detecting
+	private int okDist; // the distance between blobColor and the pixel which
+	// "still counts" as the color
+	private Connectivity connectivity = Connectivity.FOUR;
+	private Path storage; // the file the disjoint sets are mapped from, null for direct buffers
+	private BitMask mask; // the thresholded picture
+	private LongDisjointSets ds; // one long pixel id per pixel
+	private long blobCount; // blobs found by the last ranking
+
+	/**
+	 * @param rows
+	 *            the rows of packed RGB values of the picture, a MappedRgbRows
+	 *            for one that does not fit in memory
+	 * @param blobColor
+	 *            the color of the blob to be detected
+	 * @param okDist
+	 *            the thresh hold from the color that is acceptable for a color
+	 *            considered the "same color" as the blobColor
+	 */
+	public LargeDetector(PixelRows rows, Color blobColor, int okDist) {
+		if (rows == null) {
+			throw new NullPointerException();
+		}
+		this.rows = rows;
+		this.blobColor = blobColor;
+		this.okDist = okDist;
+	}
+
+	/**
+	 * @param connectivity
+	 *            which pixels count as neighbors in the next call to detect(),
+	 *            FOUR by default
+	 */
+	public void setConnectivity(Connectivity connectivity) {
+		if (connectivity == null) {
+			throw new NullPointerException();
+		}
+		this.connectivity = connectivity;
+	}
+
+	/**
+	 * @param file
+	 *            where the next call to detect() keeps the disjoint sets, 8
+	 *            bytes a pixel, null to keep them in direct buffers
+	 */
+	public void setStorage(Path file) {
+		this.storage = file;
+	}
+
+	/**
+	 * @throws IOException
+	 *             if the disjoint sets cannot be mapped from the file
+	 *
+	 *             This method detects blobs of the desired color in the
+	 *             picture.
+	 */
+	public void detect() throws IOException {
+		int width = rows.getWidth();
+		int height = rows.getHeight();
+		long pixels = (long) width * height;
+		PhaseEvent event = PhaseEvent.start(PhaseEvent.THRESH, pixels);
+		if (mask == null || mask.getWidth() != width || mask.getHeight() != height) {
+			mask = new BitMask(width, height);
+		}
+		Detector.threshBits(rows, blobColor, okDist, mask);
+		event.commit();
+
+		event = PhaseEvent.start(PhaseEvent.DETECT, pixels);
+		close();
+		ds = storage == null ? new LongDisjointSets(pixels) : new LongDisjointSets(pixels, storage);
+		boolean diagonals = connectivity == Connectivity.EIGHT;
+		for (int y = 0; y < height; y++) {
+			if (mask.isBandEmpty(y)) {
+				y = mask.getBandEnd(y) - 1;
+				continue;
+			}
+			// every pixel of the color is unioned with the ones before it
+			for (int w = 0; w < mask.getStride(); w++) {
+				long word = mask.getWord(y, w);
+				while (word != 0) {
+					int x = (w << 6) + Long.numberOfTrailingZeros(word);
+					word &= word - 1;
+					long id = Detector.getLongId(width, x, y);
+					long root = id;
+					if (x > 0 && mask.get(x - 1, y)) {
+						root = join(root, id - 1);
+					}
+					if (y > 0) {
+						if (diagonals && x > 0 && mask.get(x - 1, y - 1)) {
+							root = join(root, id - width - 1);
+						}
+						if (mask.get(x, y - 1)) {
+							root = join(root, id - width);
+						}
+						if (diagonals && x + 1 < width && mask.get(x + 1, y - 1)) {
+							root = join(root, id - width + 1);
+						}
+					}
+				}
+			}
+		}
+		event.commit();
+	}
+
+	/**
+	 * @param root
+	 *            the root of a set
+	 * @param id
+	 *            a pixel
+	 * @return the root of the set holding both
+	 */
+	private long join(long root, long id) {
+		long other = ds.find(id);
+		return other == root ? root : ds.union(root, other);
+	}
+
+	/**
+	 * @param best
+	 *            offered every blob as (pixels, first pixel id, first pixel
+	 *            id), and sorted afterwards
+	 * @return the number of blobs
+	 *
+	 *         Only the pixels of the color are looked at, a word of the mask
+	 *         at a time.
+	 */
+	public long rank(TopK best) {
+		PhaseEvent event = PhaseEvent.start(PhaseEvent.RANK, ds.sizeDisjoint());
+		int width = mask.getWidth();
+		long blobs = 0;
+		for (int y = 0; y < mask.getHeight(); y++) {
+			if (mask.isBandEmpty(y)) {
+				y = mask.getBandEnd(y) - 1;
+				continue;
+			}
+			for (int w = 0; w < mask.getStride(); w++) {
+				long word = mask.getWord(y, w);
+				while (word != 0) {
+					int x = (w << 6) + Long.numberOfTrailingZeros(word);
+					word &= word - 1;
+					long id = Detector.getLongId(width, x, y);
+					if (ds.isRoot(id)) {
+						blobs++;
+						best.offer(ds.size(id), id, id);
+					}
+				}
+			}
+		}
+		best.sort();
+		blobCount = blobs;
+		event.commit();
+		return blobs;
+	}
+
+	/**
+	 * @param id
+	 *            a pixel id, see Detector.getLongId()
+	 * @return the id of the first pixel of the blob it is in, or id itself
+	 *         if it is not the color
+	 */
+	public long getBlob(long id) {
+		return ds.find(id);
+	}
+
+	/**
+	 * @return the number of blobs, as of the last rank() or outputResults()
+	 */
+	public long getBlobCount() {
+		return blobCount;
+	}
+
+	/**
+	 * @param k
+	 *            the number of blobs we are interested in
+	 *
+	 *            Prints the sizes of the k largest blobs the way Detector
+	 *            does.
+	 */
+	public void outputResults(int k) {
+		if (k < 1) {
+			throw new IllegalArgumentException("! Error: k should be greater than 0, current k=" + k);
+		}
+		TopK best = new TopK(k);
+		rank(best);
+		System.out.println(best.size() + "/" + blobCount);
+		for (int i = 0; i < best.size(); i++) {
+			System.out.println("Blob " + (i + 1) + ": " + best.getSize(i) + " pixels");
+		}
+	}
+
+	/**
+	 * Lets go of the disjoint sets, the file they were mapped from is left
+	 * behind
+	 */
+	public void close() throws IOException {
+		if (ds != null) {
+			ds.close();
+			ds = null;
+		}
+	}
+
+	/**
+	 * @param args
+	 *            command line arguments Main method
+	 */
+	public static void main(String[] args) throws IOException {
+		// the same blobs as Detector finds
+		java.awt.image.BufferedImage image = SyntheticImages.circles(400, 300, 30, 1);
+		Detector detector = new Detector(image, SyntheticImages.BLOB_COLOR, 30);
+		detector.detect();
+		java.util.List<Blob> blobs = detector.getBlobs(3);
+		System.out.println(blobs.size() + "/" + detector.getBlobCount());
+		for (int i = 0; i < blobs.size(); i++) {
+			System.out.println("Blob " + (i + 1) + ": " + blobs.get(i).getSize() + " pixels");
+		}
+		Path file = Files.createTempFile("blobs", ".bin");
+		try (LargeDetector large = new LargeDetector(new RasterRows(image), SyntheticImages.BLOB_COLOR, 30)) {
+			large.setStorage(file);
+			large.detect();
+			large.outputResults(3);
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
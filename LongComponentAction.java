@@ -0,0 +1,14 @@
+/**
+ * What LongDisjointSets.forEachComponent() does with every set, the long
+ * version of ComponentAction.
+ */
+public interface LongComponentAction {
+
+	/**
+	 * @param root
+	 *            the root of a set
+	 * @param size
+	 *            the number of elements in the set
+	 */
+	void accept(long root, long size);
+}
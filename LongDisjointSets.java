@@ -0,0 +1,296 @@
+/**
+ * A version of IntDisjointSets for more than 2^31 elements, with long ids
+ * 0..n-1, kept off the Java heap so the garbage collector never has to look
+ * at it. Every element is one long in a direct ByteBuffer, or in a file
+ * that is memory-mapped with FileChannel.map, so a picture of billions of
+ * pixels takes 8 bytes a pixel of memory the operating system can page
+ * out, and nothing else.
+ *
+ * A buffer holds at most 2 GB, so the longs are kept in chunks of
+ * CHUNK_LONGS. A root holds 1 - its size and any other element holds its
+ * parent + 1, so memory that is all 0, which is what a new direct buffer or
+ * a new file is, is already n sets of one and needs no pass to set up.
+ *
+ * The smaller id is always the root of a union. For pixel ids that makes
+ * the root of a blob its first pixel in raster order, which is how blobs of
+ * the same size are ranked. Paths are halved on every find. There is no
+ * list of the members of a set, which would take another 8 bytes an
+ * element.
+ */
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class LongDisjointSets implements Closeable {
+	// the longs in every chunk but maybe the last, 1 GB of them
+	private static final int CHUNK_SHIFT = 27;
+	private static final long CHUNK_LONGS = 1L << CHUNK_SHIFT;
+	private static final long CHUNK_MASK = CHUNK_LONGS - 1;
+
+	private LongBuffer[] chunks;
+	private long size;
+	private long components; // the number of sets
+	private FileChannel channel; // the file the chunks are mapped from, null if direct
+
+	/**
+	 * @param n
+	 *            the number of elements, each starts in its own set. They are
+	 *            kept in direct buffers, which count against
+	 *            -XX:MaxDirectMemorySize.
+	 */
+	public LongDisjointSets(long n) {
+		init(n);
+		for (int i = 0; i < chunks.length; i++) {
+			chunks[i] = ByteBuffer.allocateDirect(chunkBytes(i)).order(ByteOrder.nativeOrder()).asLongBuffer();
+		}
+	}
+
+	/**
+	 * @param n
+	 *            the number of elements, each starts in its own set
+	 * @param file
+	 *            a file to keep the elements in, made n * 8 bytes long. Any
+	 *            bytes it had are lost. It is left behind after close().
+	 * @throws IOException
+	 *             if the file cannot be made or mapped
+	 */
+	public LongDisjointSets(long n, Path file) throws IOException {
+		init(n);
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			for (int i = 0; i < chunks.length; i++) {
+				// mapping past the end grows the file with 0s
+				chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i * CHUNK_LONGS * 8, chunkBytes(i))
+						.order(ByteOrder.nativeOrder()).asLongBuffer();
+			}
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @param n
+	 *            the number of elements
+	 */
+	private void init(long n) {
+		if (n < 0 || n > CHUNK_LONGS * Integer.MAX_VALUE) {
+			throw new IllegalArgumentException();
+		}
+		size = n;
+		components = n;
+		chunks = new LongBuffer[(int) ((n + CHUNK_LONGS - 1) >>> CHUNK_SHIFT)];
+	}
+
+	/**
+	 * @param i
+	 *            a chunk
+	 * @return the number of bytes in it
+	 */
+	private int chunkBytes(int i) {
+		return (int) (Math.min(CHUNK_LONGS, size - i * CHUNK_LONGS) * 8);
+	}
+
+	/**
+	 * @param x
+	 *            an element
+	 * @return what is kept for it
+	 */
+	private long get(long x) {
+		return chunks[(int) (x >>> CHUNK_SHIFT)].get((int) (x & CHUNK_MASK));
+	}
+
+	/**
+	 * @param x
+	 *            an element
+	 * @param value
+	 *            what is kept for it from now on
+	 */
+	private void set(long x, long value) {
+		chunks[(int) (x >>> CHUNK_SHIFT)].put((int) (x & CHUNK_MASK), value);
+	}
+
+	/**
+	 * Puts every element back in its own set
+	 */
+	public void reset() {
+		for (LongBuffer chunk : chunks) {
+			for (int i = 0; i < chunk.capacity(); i++) {
+				chunk.put(i, 0);
+			}
+		}
+		components = size;
+	}
+
+	/**
+	 * @param root1
+	 *            the root of the first set to be joined
+	 * @param root2
+	 *            the root of the second set to be joined
+	 * @return the root of the unioned set, the smaller of the two O(1) time
+	 */
+	public long union(long root1, long root2) {
+		assertIsItem(root1);
+		assertIsItem(root2);
+		long value1 = get(root1);
+		long value2 = get(root2);
+		// throw IllegalArgumentException() if non-roots provided
+		assertIsRoot(root1, value1);
+		assertIsRoot(root2, value2);
+		if (root1 == root2) {
+			throw new IllegalArgumentException();
+		}
+		long newRoot = Math.min(root1, root2);
+		long oldRoot = Math.max(root1, root2);
+		// 1 - (size1 + size2) from 1 - size1 and 1 - size2
+		set(newRoot, value1 + value2 - 1);
+		set(oldRoot, newRoot + 1);
+		components--;
+		return newRoot;
+	}
+
+	/**
+	 * @param x
+	 *            an item in a set whose root we want
+	 * @return the root of the set
+	 */
+	public long find(long x) {
+		assertIsItem(x);
+		// point every other element on the path at its grandparent
+		long parent = get(x) - 1;
+		while (parent >= 0) {
+			long grandparent = get(parent) - 1;
+			if (grandparent < 0) {
+				return parent;
+			}
+			set(x, grandparent + 1);
+			x = grandparent;
+			parent = get(x) - 1;
+		}
+		return x;
+	}
+
+	/**
+	 * @param x
+	 *            an item
+	 * @return true if it is the root of its set
+	 */
+	public boolean isRoot(long x) {
+		assertIsItem(x);
+		return get(x) <= 0;
+	}
+
+	/**
+	 * @param root
+	 *            the root of the set whose size we want returned
+	 * @return the size of the set
+	 */
+	public long size(long root) {
+		assertIsItem(root);
+		long value = get(root);
+		assertIsRoot(root, value);
+		return 1 - value;
+	}
+
+	/**
+	 * @param action
+	 *            given the root and size of every set, in increasing order
+	 *            of roots
+	 */
+	public void forEachComponent(LongComponentAction action) {
+		for (int c = 0; c < chunks.length; c++) {
+			LongBuffer chunk = chunks[c];
+			long base = c * CHUNK_LONGS;
+			for (int i = 0; i < chunk.capacity(); i++) {
+				long value = chunk.get(i);
+				if (value <= 0) {
+					action.accept(base + i, 1 - value);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the number of sets
+	 */
+	public long getComponentCount() {
+		return components;
+	}
+
+	/**
+	 * @return how many elements are in the disjoint set
+	 */
+	public long sizeDisjoint() {
+		return size;
+	}
+
+	/**
+	 * Lets go of the buffers and closes the file, if any. The mappings of a
+	 * file stay until they are garbage collected, there is no way to unmap
+	 * them sooner.
+	 */
+	public void close() throws IOException {
+		chunks = new LongBuffer[0];
+		size = 0;
+		components = 0;
+		if (channel != null) {
+			channel.close();
+			channel = null;
+		}
+	}
+
+	/**
+	 * @param root
+	 *            the root in question
+	 * @param value
+	 *            what is kept for it
+	 */
+	private static void assertIsRoot(long root, long value) {
+		if (value > 0) {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * @param x
+	 *            the item in question
+	 */
+	private void assertIsItem(long x) {
+		if (x < 0 || x >= size) {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * @param args
+	 *            command line arguments Main method
+	 */
+	public static void main(String[] args) throws IOException {
+		try (LongDisjointSets ds = new LongDisjointSets(10)) {
+			System.out.println(ds.find(0)); // should be 0
+			System.out.println(ds.union(1, 0)); // should be 0
+			System.out.println(ds.find(1)); // should be 0
+			System.out.println(ds.union(0, 2)); // should be 0
+			System.out.println("The size is: " + ds.size(0)); // should be 3
+			System.out.println(ds.union(4, 3)); // should be 3
+			System.out.println(ds.union(3, 0)); // should be 0
+			System.out.println(ds.getComponentCount()); // should be 6
+		}
+
+		// ids past 2^31, in a file
+		Path file = java.nio.file.Files.createTempFile("sets", ".bin");
+		try (LongDisjointSets ds = new LongDisjointSets(3L << 30, file)) {
+			long far = (3L << 30) - 1;
+			System.out.println(ds.union(far, 5)); // should be 5
+			System.out.println(ds.find(far) + " " + ds.size(5)); // should be 5 2
+		} finally {
+			java.nio.file.Files.delete(file);
+		}
+	}
+}
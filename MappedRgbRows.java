@@ -0,0 +1,214 @@
+/**
+ * Reads the rows of a raw RGB file (3 bytes per pixel, row after row) or of
+ * a binary PPM (P6) file straight from the file, which is memory-mapped with
+ * FileChannel.map instead of decoded. Nothing is read until a row is asked
+ * for, and the pixels never have to fit in the Java heap, so even frames of
+ * several gigabytes can be thresholded and labeled at once.
+ *
+ * A single mapping can be at most 2 GB, so the file is mapped in chunks of
+ * whole rows.
+ */
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class MappedRgbRows implements PixelRows, Closeable {
+	private FileChannel channel;
+	private int width;
+	private int height;
+	private int rowsPerChunk; // rows in every mapping but maybe the last
+	private MappedByteBuffer[] chunks;
+	// bytes of one row, one buffer per thread so rows can be read at once
+	private ThreadLocal<byte[]> rowBytes;
+
+	/**
+	 * @param channel
+	 *            the open file
+	 * @param offset
+	 *            where the pixels start in the file
+	 * @param width
+	 *            the width of the image
+	 * @param height
+	 *            the height of the image
+	 * @throws IOException
+	 *             if the file is too short or cannot be mapped
+	 */
+	private MappedRgbRows(FileChannel channel, long offset, int width, int height) throws IOException {
+		if (width < 1 || height < 1) {
+			throw new IOException("Bad image size " + width + "x" + height);
+		}
+		long stride = 3L * width;
+		if (channel.size() < offset + stride * height) {
+			throw new IOException("File holds less than " + width + "x" + height + " pixels");
+		}
+		this.channel = channel;
+		this.width = width;
+		this.height = height;
+		this.rowsPerChunk = (int) Math.max(1, Integer.MAX_VALUE / stride);
+		this.chunks = new MappedByteBuffer[(height + rowsPerChunk - 1) / rowsPerChunk];
+		for (int i = 0; i < chunks.length; i++) {
+			int rows = Math.min(rowsPerChunk, height - i * rowsPerChunk);
+			chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset + stride * i * rowsPerChunk,
+					stride * rows);
+		}
+		this.rowBytes = ThreadLocal.withInitial(() -> new byte[3 * width]);
+	}
+
+	/**
+	 * @param fileName
+	 *            a file of width * height pixels as red, green, blue bytes,
+	 *            row after row
+	 * @param width
+	 *            the width of the image
+	 * @param height
+	 *            the height of the image
+	 * @return the rows of the file
+	 * @throws IOException
+	 *             if the file cannot be opened or is too short
+	 */
+	public static MappedRgbRows openRaw(String fileName, int width, int height) throws IOException {
+		FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+		try {
+			return new MappedRgbRows(channel, 0, width, height);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @param fileName
+	 *            a binary PPM (P6) file with a maximum value of 255
+	 * @return the rows of the file
+	 * @throws IOException
+	 *             if the file cannot be opened or is not such a PPM
+	 */
+	public static MappedRgbRows openPpm(String fileName) throws IOException {
+		FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+		try {
+			// the header is a few short ASCII fields, with # comments
+			ByteBuffer header = ByteBuffer.allocate((int) Math.min(channel.size(), 4096));
+			channel.read(header, 0);
+			header.flip();
+			if (!nextToken(header).equals("P6")) {
+				throw new IOException(fileName + " is not a binary PPM");
+			}
+			int width = Integer.parseInt(nextToken(header));
+			int height = Integer.parseInt(nextToken(header));
+			int maxValue = Integer.parseInt(nextToken(header));
+			if (maxValue != 255) {
+				throw new IOException("Only 8 bit PPM is supported, maximum value " + maxValue);
+			}
+			// exactly one whitespace byte comes before the pixels
+			return new MappedRgbRows(channel, header.position() + 1, width, height);
+		} catch (IOException | NumberFormatException e) {
+			channel.close();
+			throw e instanceof IOException ? (IOException) e : new IOException(fileName + " has a bad header", e);
+		}
+	}
+
+	/**
+	 * @param fileName
+	 *            a .ppm file, or a raw RGB file named like frame_WIDTHxHEIGHT.rgb
+	 * @return the rows of the file
+	 * @throws IOException
+	 *             if the file cannot be opened, or the size of a raw file is
+	 *             not in its name
+	 */
+	public static MappedRgbRows open(String fileName) throws IOException {
+		String lower = fileName.toLowerCase();
+		if (lower.endsWith(".ppm")) {
+			return openPpm(fileName);
+		}
+		Matcher size = Pattern.compile("(\\d+)x(\\d+)\\.(rgb|raw)$").matcher(lower);
+		if (!size.find()) {
+			throw new IOException("The size of " + fileName + " should be in its name, as in frame_640x480.rgb");
+		}
+		return openRaw(fileName, Integer.parseInt(size.group(1)), Integer.parseInt(size.group(2)));
+	}
+
+	/**
+	 * @param fileName
+	 *            the name of a file
+	 * @return true if open() can read it
+	 */
+	public static boolean isRaw(String fileName) {
+		String lower = fileName.toLowerCase();
+		return lower.endsWith(".ppm") || lower.endsWith(".rgb") || lower.endsWith(".raw");
+	}
+
+	/**
+	 * @param header
+	 *            the start of a PPM file, positioned in the header
+	 * @return the next field, leaving header just after it
+	 * @throws IOException
+	 *             if the header ends first
+	 */
+	private static String nextToken(ByteBuffer header) throws IOException {
+		StringBuilder token = new StringBuilder();
+		while (header.hasRemaining()) {
+			char c = (char) header.get();
+			if (c == '#' && token.length() == 0) {
+				while (header.hasRemaining() && header.get() != '\n') {
+					// skip the comment
+				}
+			} else if (Character.isWhitespace(c)) {
+				if (token.length() > 0) {
+					header.position(header.position() - 1);
+					return token.toString();
+				}
+			} else {
+				token.append(c);
+			}
+		}
+		throw new IOException("PPM header ended early");
+	}
+
+	/**
+	 * @return the number of pixels in a row
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return the number of rows
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @param y
+	 *            the row to read
+	 * @param row
+	 *            filled with the packed RGB value of every pixel in the row
+	 */
+	public void read(int y, int[] row) {
+		if (y < 0 || y >= height) {
+			throw new IndexOutOfBoundsException("row " + y);
+		}
+		byte[] bytes = rowBytes.get();
+		// an absolute get never moves the buffer, so threads do not clash
+		chunks[y / rowsPerChunk].get((y % rowsPerChunk) * bytes.length, bytes, 0, bytes.length);
+		for (int x = 0, i = 0; x < width; x++, i += 3) {
+			row[x] = ((bytes[i] & 0xff) << 16) | ((bytes[i + 1] & 0xff) << 8) | (bytes[i + 2] & 0xff);
+		}
+	}
+
+	/**
+	 * Closes the file. The mappings stay readable until they are collected.
+	 *
+	 * @throws IOException
+	 *             if the file cannot be closed
+	 */
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,56 @@
+/**
+ * Reads the rows of a thresholded mask, one byte per pixel in row-major
+ * order, as pixel values.
+ */
+public class MaskRows implements PixelRows {
+	private byte[] mask;
+	private int width;
+	private int height;
+
+	/**
+	 * @param mask
+	 *            one byte per pixel, pixel (x, y) at width * y + x
+	 * @param width
+	 *            the width of the image
+	 * @param height
+	 *            the height of the image
+	 */
+	public MaskRows(byte[] mask, int width, int height) {
+		if (mask == null) {
+			throw new NullPointerException();
+		}
+		if (mask.length < width * height) {
+			throw new IllegalArgumentException();
+		}
+		this.mask = mask;
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * @return the number of pixels in a row
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return the number of rows
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @param y
+	 *            the row to read
+	 * @param row
+	 *            filled with the mask value of every pixel in the row
+	 */
+	public void read(int y, int[] row) {
+		int offset = width * y;
+		for (int x = 0; x < width; x++) {
+			row[x] = mask[offset + x];
+		}
+	}
+}
@@ -0,0 +1,234 @@
+/**
+ * This class detects blobs of several colors at once. Every pixel is
+ * classified against all the colors in one pass (see Detector.classify()),
+ * and the class mask is labeled into one IntDisjointSets in one pass, so
+ * looking for n colors costs about as much as looking for one instead of n
+ * times as much. Neighbors are only joined when they are of the same class,
+ * so every set is a blob of exactly one color.
+ */
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.imageio.ImageIO;
+
+public class MultiColorDetector {
+	private BufferedImage img; // the picture blobs are detected in
+	private Color[] colors; // the colors of the blobs we are detecting
+	private int[] okDists; // the distance to each color which "still counts"
+	private IntDisjointSets ds; // the blobs of every color
+	private byte[] mask; // i + 1 for pixels of colors[i], 0 for no color
+	private BlobStats stats; // the bounding box etc. of every blob
+	private int threads = 1; // the number of threads used to label
+	private ForkJoinPool pool; // the threads, null for 1
+	private Connectivity connectivity = Connectivity.FOUR; // which pixels are neighbors
+	private int[] blobCounts; // the number of blobs of each color
+
+	/**
+	 * @param image
+	 *            the picture to find the blobs in
+	 * @param colors
+	 *            the colors of the blobs to be detected, at most 127
+	 * @param okDists
+	 *            the thresh hold from each color that is acceptable for a
+	 *            color considered the "same color"
+	 */
+	public MultiColorDetector(BufferedImage image, Color[] colors, int[] okDists) {
+		if (colors.length != okDists.length) {
+			throw new IllegalArgumentException("! Error: " + colors.length + " colors but " + okDists.length
+					+ " distances");
+		}
+		if (colors.length == 0 || colors.length > Byte.MAX_VALUE) {
+			throw new IllegalArgumentException("! Error: between 1 and 127 colors are allowed, current count="
+					+ colors.length);
+		}
+		this.img = image;
+		this.colors = colors.clone();
+		this.okDists = okDists.clone();
+		this.blobCounts = new int[colors.length];
+	}
+
+	/**
+	 * @param imgfile
+	 *            the name of the picture to find the blobs in
+	 * @param colors
+	 *            the colors of the blobs to be detected, at most 127
+	 * @param okDists
+	 *            the thresh hold from each color that is acceptable for a
+	 *            color considered the "same color"
+	 * @throws IOException
+	 *             if the picture cannot be read
+	 */
+	public MultiColorDetector(String imgfile, Color[] colors, int[] okDists) throws IOException {
+		this(read(imgfile), colors, okDists);
+	}
+
+	/**
+	 * @param imgfile
+	 *            the name of a picture
+	 * @return the picture
+	 * @throws IOException
+	 *             if the picture cannot be read
+	 */
+	private static BufferedImage read(String imgfile) throws IOException {
+		BufferedImage image = ImageIO.read(new File(imgfile));
+		if (image == null) {
+			throw new IOException("No reader for " + imgfile);
+		}
+		return image;
+	}
+
+	/**
+	 * @param threads
+	 *            the number of threads used to label, 1 labels on the calling
+	 *            thread
+	 * 
+	 *            The threads are started here and kept for every later
+	 *            detect(). They are daemon threads, so they never keep the
+	 *            program from ending.
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("! Error: threads should be greater than 0, current threads=" + threads);
+		}
+		if (pool != null) {
+			pool.shutdown();
+		}
+		this.threads = threads;
+		pool = threads > 1 ? new ForkJoinPool(threads) : null;
+	}
+
+	/**
+	 * @param connectivity
+	 *            which pixels count as neighbors in the next call to detect(),
+	 *            FOUR by default
+	 */
+	public void setConnectivity(Connectivity connectivity) {
+		if (connectivity == null) {
+			throw new NullPointerException();
+		}
+		this.connectivity = connectivity;
+	}
+
+	/**
+	 * Classifies the picture against every color and labels all the blobs in
+	 * one pass each.
+	 */
+	public void detect() {
+		int width = img.getWidth();
+		int height = img.getHeight();
+		if (mask == null || mask.length != width * height) {
+			mask = new byte[width * height];
+			ds = null;
+		}
+		Detector.classify(new RasterRows(img), colors, okDists, mask);
+
+		if (ds == null) {
+			ds = new IntDisjointSets(width * height);
+			stats = new BlobStats(img, mask);
+			ds.setAggregate(stats);
+		} else {
+			ds.reset();
+			stats.reset(img, mask);
+		}
+		PixelRows maskRows = new MaskRows(mask, width, height);
+		if (threads > 1) {
+			RasterLabeler.labelParallel(maskRows, ds, pool, connectivity);
+		} else {
+			RasterLabeler.label(maskRows, ds, connectivity);
+		}
+	}
+
+	/**
+	 * @param k
+	 *            the number of blobs to return per color
+	 * @return for every color, in the order given, its k largest blobs,
+	 *         largest first, found in one pass over the pixels
+	 */
+	public List<List<Blob>> getBlobs(int k) {
+		TopK[] best = new TopK[colors.length];
+		for (int c = 0; c < colors.length; c++) {
+			best[c] = new TopK(k);
+			blobCounts[c] = 0;
+		}
+		// only the roots are visited, a blob is offered at its first pixel
+		ds.forEachComponent((root, size) -> {
+			if (mask[root] != 0) {
+				int c = mask[root] - 1;
+				blobCounts[c]++;
+				best[c].offer(size, stats.getFirst(root), root);
+			}
+		});
+
+		ArrayList<List<Blob>> blobs = new ArrayList<List<Blob>>();
+		for (int c = 0; c < colors.length; c++) {
+			best[c].sort();
+			ArrayList<Blob> list = new ArrayList<Blob>();
+			for (int i = 0; i < best[c].size(); i++) {
+				int root = (int) best[c].getId(i);
+				list.add(stats.toBlob(root, ds.size(root), (int) best[c].getOrder(i)));
+			}
+			blobs.add(list);
+		}
+		return blobs;
+	}
+
+	/**
+	 * @param c
+	 *            the index of a color
+	 * @return the number of blobs of colors[c], as of the last getBlobs() or
+	 *         outputResults()
+	 */
+	public int getBlobCount(int c) {
+		return blobCounts[c];
+	}
+
+	/**
+	 * @param k
+	 *            the number of blobs to output per color
+	 *
+	 *            Outputs the k largest blobs of every color to console, the
+	 *            same way Detector does for one color.
+	 */
+	public void outputResults(int k) {
+		List<List<Blob>> blobs = getBlobs(k);
+		for (int c = 0; c < colors.length; c++) {
+			Color color = colors[c];
+			System.out.println("Color " + color.getRed() + "," + color.getGreen() + "," + color.getBlue() + " ("
+					+ okDists[c] + "): " + blobs.get(c).size() + "/" + blobCounts[c]);
+			for (int i = 0; i < blobs.get(c).size(); i++) {
+				System.out.println("Blob " + (i + 1) + ": " + blobs.get(c).get(i).getSize() + " pixels");
+			}
+		}
+	}
+
+	/**
+	 * @param args
+	 *            command line arguments Main method
+	 */
+	public static void main(String[] args) {
+		// red and blue squares, the blue one touching a red one
+		BufferedImage image = new BufferedImage(8, 4, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < 4; y++) {
+			for (int x = 0; x < 8; x++) {
+				image.setRGB(x, y, Color.WHITE.getRGB());
+			}
+		}
+		for (int y = 0; y < 2; y++) {
+			for (int x = 0; x < 2; x++) {
+				image.setRGB(x, y, Color.RED.getRGB());
+				image.setRGB(x + 2, y, Color.BLUE.getRGB());
+				image.setRGB(x + 5, y + 1, Color.RED.getRGB());
+			}
+		}
+		image.setRGB(7, 0, Color.RED.getRGB());
+		MultiColorDetector detector = new MultiColorDetector(image, new Color[] { Color.RED, Color.BLUE },
+				new int[] { 10, 10 });
+		detector.detect();
+		detector.outputResults(2); // red: 2/3, 4 and 4 pixels; blue: 1/1, 4
+	}
+}
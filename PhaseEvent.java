@@ -0,0 +1,64 @@
+/**
+ * A Java Flight Recorder event for one phase of blob detection (decode,
+ * thresh, detect, rank, encode) with the number of pixels it went over. Run
+ * with -XX:StartFlightRecording, or use PhaseRecording, to see where the
+ * time goes on a real picture.
+ *
+ * When no recording is on, begin() and commit() return at once, so the
+ * events can stay in the code for good.
+ */
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("BlobDetection.Phase")
+@Label("Blob Detection Phase")
+@Category("Blob Detection")
+@Description("One phase of detecting blobs in a picture")
+public class PhaseEvent extends jdk.jfr.Event {
+	public static final String DECODE = "decode";
+	public static final String THRESH = "thresh";
+	public static final String DETECT = "detect";
+	public static final String RANK = "rank";
+	public static final String ENCODE = "encode";
+
+	@Label("Phase")
+	String phase;
+
+	@Label("Pixels")
+	long pixels;
+
+	/**
+	 * @param phase
+	 *            the name of the phase, one of the constants above
+	 * @param pixels
+	 *            the number of pixels it goes over
+	 */
+	public PhaseEvent(String phase, long pixels) {
+		this.phase = phase;
+		this.pixels = pixels;
+	}
+
+	/**
+	 * @param phase
+	 *            the name of the phase, one of the constants above
+	 * @param pixels
+	 *            the number of pixels it goes over
+	 * @return an event that has begun, commit() it when the phase is done
+	 */
+	public static PhaseEvent start(String phase, long pixels) {
+		PhaseEvent event = new PhaseEvent(phase, pixels);
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * @param pixels
+	 *            the number of pixels the phase went over, for a phase that
+	 *            only knows it at the end
+	 */
+	public void setPixels(long pixels) {
+		this.pixels = pixels;
+	}
+}
@@ -0,0 +1,63 @@
+/**
+ * Records the PhaseEvents of this program with the Flight Recorder while it
+ * runs, and adds them up by phase when it is stopped. This is what the
+ * -stats flag of BlobDetection prints. Only PhaseEvents are turned on, so
+ * the recording itself costs little.
+ */
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class PhaseRecording {
+	private Recording recording;
+
+	/**
+	 * Starts recording the PhaseEvents
+	 */
+	public PhaseRecording() {
+		recording = new Recording();
+		recording.enable(PhaseEvent.class).withoutThreshold();
+		recording.start();
+	}
+
+	/**
+	 * @param out
+	 *            where to print the time and pixels of every phase, in the
+	 *            order the phases first ran
+	 * @throws IOException
+	 *             if the recording cannot be read back
+	 */
+	public void stop(PrintStream out) throws IOException {
+		recording.stop();
+		Path file = Files.createTempFile("phases", ".jfr");
+		try {
+			recording.dump(file);
+			// phase -> { events, nanoseconds, pixels }
+			Map<String, long[]> totals = new LinkedHashMap<String, long[]>();
+			for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+				if (!event.getEventType().getName().equals("BlobDetection.Phase")) {
+					continue;
+				}
+				long[] total = totals.computeIfAbsent(event.getString("phase"), phase -> new long[3]);
+				total[0]++;
+				total[1] += event.getDuration().toNanos();
+				total[2] += event.getLong("pixels");
+			}
+			for (Map.Entry<String, long[]> entry : totals.entrySet()) {
+				long[] total = entry.getValue();
+				out.println(String.format("%-7s %9.3f ms %12d pixels %8.2f ns/pixel (%d)", entry.getKey() + ":",
+						total[1] / 1e6, total[2], total[2] == 0 ? 0.0 : (double) total[1] / total[2], total[0]));
+			}
+		} finally {
+			recording.close();
+			Files.deleteIfExists(file);
+		}
+	}
+}
@@ -0,0 +1,25 @@
+/**
+ * A source of pixel values that is read one whole row at a time. Reading
+ * different rows from different threads at once must be safe.
+ */
+public interface PixelRows {
+
+	/**
+	 * @return the number of pixels in a row
+	 */
+	int getWidth();
+
+	/**
+	 * @return the number of rows
+	 */
+	int getHeight();
+
+	/**
+	 * @param y
+	 *            the row to read
+	 * @param row
+	 *            filled with the value of every pixel in the row, must be at
+	 *            least getWidth() long
+	 */
+	void read(int y, int[] row);
+}
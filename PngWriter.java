@@ -0,0 +1,464 @@
+/**
+ * Writes 8 bit RGB (or RGBA) PNG files, with the compression level chosen by
+ * the caller. Big images are cut into bands of rows which are filtered and
+ * deflated in parallel, each band as its own run of deflate blocks ending in
+ * a sync flush, so the bands can simply be written one after the other into
+ * one zlib stream. The adler32 checksums of the bands are combined instead
+ * of read over all the data again.
+ *
+ * writeAsync() does all of it in the background and returns a handle that
+ * completes when the file is written.
+ */
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+public class PngWriter {
+	// compression levels, any level from 0 to 9 can be used
+	public static final int STORE = Deflater.NO_COMPRESSION;
+	public static final int FAST = Deflater.BEST_SPEED;
+	public static final int DEFAULT = 6;
+	public static final int BEST = Deflater.BEST_COMPRESSION;
+
+	// the pixels in a band, unless setBandRows() was called
+	private static final int BAND_PIXELS = 1 << 20;
+	private static final byte[] SIGNATURE = { (byte) 137, 'P', 'N', 'G', '\r', '\n', 26, '\n' };
+	private static final int ADLER_BASE = 65521;
+
+	private int level; // the deflate level
+	private int bandRows; // rows per band, 0 to pick from the width
+
+	/**
+	 * Writes with the DEFAULT level
+	 */
+	public PngWriter() {
+		this(DEFAULT);
+	}
+
+	/**
+	 * @param level
+	 *            the deflate level, from STORE (0) to BEST (9)
+	 */
+	public PngWriter(int level) {
+		setLevel(level);
+	}
+
+	/**
+	 * @param level
+	 *            the deflate level, from STORE (0) to BEST (9)
+	 */
+	public void setLevel(int level) {
+		if (level < STORE || level > BEST) {
+			throw new IllegalArgumentException("! Error: level should be from 0 to 9, current level=" + level);
+		}
+		this.level = level;
+	}
+
+	/**
+	 * @return the deflate level
+	 */
+	public int getLevel() {
+		return level;
+	}
+
+	/**
+	 * @param bandRows
+	 *            the rows encoded by one task, 0 to fit about a million pixels
+	 *            in a band
+	 */
+	public void setBandRows(int bandRows) {
+		if (bandRows < 0) {
+			throw new IllegalArgumentException("! Error: bandRows should not be negative, current bandRows=" + bandRows);
+		}
+		this.bandRows = bandRows;
+	}
+
+	/**
+	 * @param image
+	 *            the picture to write, which must not change until the handle
+	 *            completes
+	 * @param file
+	 *            the file to write it to
+	 * @return a handle that completes when the file is written, or
+	 *         exceptionally if it could not be
+	 */
+	public CompletableFuture<Void> writeAsync(BufferedImage image, File file) {
+		return CompletableFuture.runAsync(() -> {
+			try {
+				write(image, file);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	/**
+	 * @param image
+	 *            the picture to write
+	 * @param file
+	 *            the file to write it to
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public void write(BufferedImage image, File file) throws IOException {
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+		try {
+			write(image, out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * @param image
+	 *            the picture to write
+	 * @param out
+	 *            where the PNG is written, it is not closed
+	 * @throws IOException
+	 *             if out cannot be written
+	 */
+	public void write(BufferedImage image, OutputStream out) throws IOException {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		boolean alpha = image.getColorModel().hasAlpha();
+		PhaseEvent event = PhaseEvent.start(PhaseEvent.ENCODE, (long) width * height);
+		int rows = bandRows > 0 ? bandRows : Math.max(1, BAND_PIXELS / width);
+		int bands = (height + rows - 1) / rows;
+
+		// every band is filtered and deflated on its own
+		Band[] encoded = IntStream.range(0, bands).parallel()
+				.mapToObj(band -> encodeBand(image, alpha, band * rows, Math.min(height, (band + 1) * rows),
+						band == bands - 1))
+				.toArray(Band[]::new);
+
+		DataOutputStream data = new DataOutputStream(out);
+		data.write(SIGNATURE);
+		ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+		DataOutputStream fields = new DataOutputStream(header);
+		fields.writeInt(width);
+		fields.writeInt(height);
+		fields.writeByte(8); // bits per channel
+		fields.writeByte(alpha ? 6 : 2); // RGBA or RGB
+		fields.writeByte(0); // deflate
+		fields.writeByte(0); // adaptive filters
+		fields.writeByte(0); // not interlaced
+		writeChunk(data, "IHDR", header.toByteArray(), header.size());
+
+		writeChunk(data, "IDAT", zlibHeader(), 2);
+		long adler = 1;
+		for (Band band : encoded) {
+			writeChunk(data, "IDAT", band.bytes, band.length);
+			adler = combineAdler(adler, band.adler, band.rawLength);
+		}
+		byte[] trailer = { (byte) (adler >>> 24), (byte) (adler >>> 16), (byte) (adler >>> 8), (byte) adler };
+		writeChunk(data, "IDAT", trailer, 4);
+		writeChunk(data, "IEND", new byte[0], 0);
+		data.flush();
+		event.commit();
+	}
+
+	/**
+	 * The deflated bytes of a band of rows
+	 */
+	private static class Band {
+		private byte[] bytes;
+		private int length;
+		private long adler; // of the filtered rows
+		private long rawLength; // the number of filtered bytes
+	}
+
+	/**
+	 * @param image
+	 *            the picture
+	 * @param alpha
+	 *            true if the alpha channel is written
+	 * @param top
+	 *            the first row of the band
+	 * @param bottom
+	 *            the row after the last row of the band
+	 * @param last
+	 *            true if this is the last band of the picture
+	 * @return the band, filtered and deflated
+	 */
+	private Band encodeBand(BufferedImage image, boolean alpha, int top, int bottom, boolean last) {
+		int width = image.getWidth();
+		int channels = alpha ? 4 : 3;
+		int stride = width * channels;
+		byte[] filtered = new byte[(bottom - top) * (stride + 1)];
+		int[] pixels = new int[width];
+		byte[] previous = new byte[stride];
+		byte[] current = new byte[stride];
+		byte[] candidate = new byte[stride];
+		if (top > 0) {
+			readRow(image, alpha, top - 1, pixels, previous);
+		}
+		for (int y = top; y < bottom; y++) {
+			readRow(image, alpha, y, pixels, current);
+			int offset = (y - top) * (stride + 1);
+			filterRow(current, previous, channels, filtered, offset, candidate);
+			byte[] temp = previous;
+			previous = current;
+			current = temp;
+		}
+
+		Deflater deflater = new Deflater(level, true);
+		ByteArrayOutputStream out = new ByteArrayOutputStream(level == STORE ? filtered.length + 1024
+				: filtered.length / 4 + 1024);
+		byte[] buffer = new byte[1 << 16];
+		deflater.setInput(filtered);
+		if (last) {
+			deflater.finish();
+			while (!deflater.finished()) {
+				out.write(buffer, 0, deflater.deflate(buffer));
+			}
+		} else {
+			// end on a byte boundary without ending the stream
+			int n;
+			do {
+				n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+				out.write(buffer, 0, n);
+			} while (n == buffer.length);
+		}
+		deflater.end();
+
+		Adler32 adler = new Adler32();
+		adler.update(filtered, 0, filtered.length);
+		Band band = new Band();
+		band.bytes = out.toByteArray();
+		band.length = band.bytes.length;
+		band.adler = adler.getValue();
+		band.rawLength = filtered.length;
+		return band;
+	}
+
+	/**
+	 * @param image
+	 *            the picture
+	 * @param alpha
+	 *            true if the alpha channel is written
+	 * @param y
+	 *            the row to read
+	 * @param pixels
+	 *            a buffer of one int per pixel
+	 * @param row
+	 *            where the channels of the row are written
+	 */
+	private static void readRow(BufferedImage image, boolean alpha, int y, int[] pixels, byte[] row) {
+		int width = pixels.length;
+		if (alpha) {
+			image.getRGB(0, y, width, 1, pixels, 0, width);
+		} else {
+			RasterRows.read(image, y, pixels);
+		}
+		int j = 0;
+		for (int x = 0; x < width; x++) {
+			int rgb = pixels[x];
+			row[j++] = (byte) (rgb >> 16);
+			row[j++] = (byte) (rgb >> 8);
+			row[j++] = (byte) rgb;
+			if (alpha) {
+				row[j++] = (byte) (rgb >>> 24);
+			}
+		}
+	}
+
+	/**
+	 * @param row
+	 *            the channels of the row
+	 * @param previous
+	 *            the channels of the row above, all 0 for the first row
+	 * @param channels
+	 *            the bytes per pixel
+	 * @param out
+	 *            where the filter type and the filtered row are written
+	 * @param offset
+	 *            the index in out to write at
+	 * @param candidate
+	 *            a buffer as long as the row
+	 *
+	 *            Picks the filter with the smallest sum of (signed) output
+	 *            bytes, the usual PNG heuristic. Stored images are not
+	 *            filtered, since it would not make them any smaller.
+	 */
+	private void filterRow(byte[] row, byte[] previous, int channels, byte[] out, int offset, byte[] candidate) {
+		int stride = row.length;
+		out[offset] = 0;
+		System.arraycopy(row, 0, out, offset + 1, stride);
+		if (level == STORE) {
+			return;
+		}
+		long bestSum = sumOf(row);
+		for (int type = 1; type <= 4; type++) {
+			for (int i = 0; i < channels; i++) {
+				int b = previous[i] & 0xff;
+				// with nothing to the left a and c are 0
+				int predicted = type == 1 ? 0 : type == 3 ? b >> 1 : b;
+				candidate[i] = (byte) (row[i] - predicted);
+			}
+			switch (type) {
+			case 1:
+				for (int i = channels; i < stride; i++) {
+					candidate[i] = (byte) (row[i] - row[i - channels]);
+				}
+				break;
+			case 2:
+				for (int i = channels; i < stride; i++) {
+					candidate[i] = (byte) (row[i] - previous[i]);
+				}
+				break;
+			case 3:
+				for (int i = channels; i < stride; i++) {
+					candidate[i] = (byte) (row[i] - (((row[i - channels] & 0xff) + (previous[i] & 0xff)) >> 1));
+				}
+				break;
+			default:
+				for (int i = channels; i < stride; i++) {
+					candidate[i] = (byte) (row[i]
+							- paeth(row[i - channels] & 0xff, previous[i] & 0xff, previous[i - channels] & 0xff));
+				}
+				break;
+			}
+			long sum = sumOf(candidate);
+			if (sum < bestSum) {
+				bestSum = sum;
+				out[offset] = (byte) type;
+				System.arraycopy(candidate, 0, out, offset + 1, stride);
+			}
+		}
+	}
+
+	/**
+	 * @param bytes
+	 *            a filtered row
+	 * @return the sum of the bytes taken as signed values
+	 */
+	private static long sumOf(byte[] bytes) {
+		long sum = 0;
+		for (byte value : bytes) {
+			sum += Math.abs(value);
+		}
+		return sum;
+	}
+
+	/**
+	 * @param a
+	 *            the byte to the left
+	 * @param b
+	 *            the byte above
+	 * @param c
+	 *            the byte above and to the left
+	 * @return whichever of a, b, c is closest to a + b - c
+	 */
+	private static int paeth(int a, int b, int c) {
+		int p = a + b - c;
+		int pa = Math.abs(p - a);
+		int pb = Math.abs(p - b);
+		int pc = Math.abs(p - c);
+		if (pa <= pb && pa <= pc) {
+			return a;
+		}
+		return pb <= pc ? b : c;
+	}
+
+	/**
+	 * @return the two zlib header bytes for deflate with a 32K window
+	 */
+	private byte[] zlibHeader() {
+		int cmf = 0x78;
+		int flevel = level <= 1 ? 0 : level <= 5 ? 1 : level == 6 ? 2 : 3;
+		int flg = flevel << 6;
+		flg += 31 - (cmf * 256 + flg) % 31;
+		return new byte[] { (byte) cmf, (byte) flg };
+	}
+
+	/**
+	 * @param adler1
+	 *            the adler32 of the first part of some data
+	 * @param adler2
+	 *            the adler32 of the second part
+	 * @param length2
+	 *            the length of the second part
+	 * @return the adler32 of all the data, the way zlib's adler32_combine()
+	 *         works it out
+	 */
+	private static long combineAdler(long adler1, long adler2, long length2) {
+		long rem = length2 % ADLER_BASE;
+		long sum1 = adler1 & 0xffff;
+		long sum2 = (rem * sum1) % ADLER_BASE;
+		sum1 += (adler2 & 0xffff) + ADLER_BASE - 1;
+		sum2 += ((adler1 >> 16) & 0xffff) + ((adler2 >> 16) & 0xffff) + ADLER_BASE - rem;
+		if (sum1 >= ADLER_BASE) {
+			sum1 -= ADLER_BASE;
+		}
+		if (sum1 >= ADLER_BASE) {
+			sum1 -= ADLER_BASE;
+		}
+		if (sum2 >= (ADLER_BASE << 1)) {
+			sum2 -= (ADLER_BASE << 1);
+		}
+		if (sum2 >= ADLER_BASE) {
+			sum2 -= ADLER_BASE;
+		}
+		return sum1 | (sum2 << 16);
+	}
+
+	/**
+	 * @param out
+	 *            where the chunk is written
+	 * @param type
+	 *            the four letter type of the chunk
+	 * @param bytes
+	 *            the data of the chunk
+	 * @param length
+	 *            the number of bytes of data
+	 * @throws IOException
+	 *             if out cannot be written
+	 */
+	private static void writeChunk(DataOutputStream out, String type, byte[] bytes, int length) throws IOException {
+		byte[] name = type.getBytes("US-ASCII");
+		CRC32 crc = new CRC32();
+		crc.update(name);
+		crc.update(bytes, 0, length);
+		out.writeInt(length);
+		out.write(name);
+		out.write(bytes, 0, length);
+		out.writeInt((int) crc.getValue());
+	}
+
+	/**
+	 * @param args
+	 *            command line arguments Main method
+	 * @throws IOException
+	 *             never, the picture is written to memory
+	 */
+	public static void main(String[] args) throws IOException {
+		// write a small picture in several bands at every level and read it
+		// back
+		BufferedImage image = SyntheticImages.circles(300, 200, 40, 1);
+		for (int level = STORE; level <= BEST; level += 3) {
+			PngWriter writer = new PngWriter(level);
+			writer.setBandRows(16);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			writer.write(image, out);
+			BufferedImage read = javax.imageio.ImageIO.read(new java.io.ByteArrayInputStream(out.toByteArray()));
+			boolean same = true;
+			for (int y = 0; y < image.getHeight(); y++) {
+				for (int x = 0; x < image.getWidth(); x++) {
+					same &= (image.getRGB(x, y) & 0xffffff) == (read.getRGB(x, y) & 0xffffff);
+				}
+			}
+			System.out.println("level " + level + ": " + out.size() + " bytes, same pixels " + same); // true
+		}
+	}
+}
@@ -0,0 +1,728 @@
+/**
+ * A two-pass connected component labeler that works on whole rows of
+ * pixel values (packed RGB or a thresholded mask, see PixelRows) instead of
+ * Pixel, Color and Pair objects. The first
+ * pass unions every pixel with its above and left neighbors of the same
+ * value, the second pass points every pixel straight at its root.
+ *
+ * labelParallel() labels horizontal strips of the image at the same time
+ * and then unions across the rows where strips meet. There is also a
+ * version for ConcurrentDisjointSets, where strips need no owner at all.
+ *
+ * With Connectivity.EIGHT the image is scanned in 2x2 blocks instead. Pixels
+ * of the same value inside a block always touch, so a block needs at most
+ * four unions inside it and a few with the six pixels around it that were
+ * labeled before, where the pixel-at-a-time scan needs up to eight. Pixels of
+ * value 0 are background and are not labeled at all, so blocks of background
+ * are skipped after one check.
+ *
+ * labelTiles() labels a mask whose pixels are numbered by a TileIds, so only
+ * the tiles with foreground are looked at and the disjoint sets only need
+ * elements for them. Tiles are labeled on their own, at the same time if a
+ * pool is given, and then joined across the borders between them.
+ */
+import java.awt.image.BufferedImage;
+import java.util.stream.IntStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class RasterLabeler {
+
+	/**
+	 * @param image
+	 *            the (thresholded) image to label
+	 * @param ds
+	 *            disjoint sets with one element per pixel, pixel (x, y) has
+	 *            id width * y + x
+	 */
+	public static void label(BufferedImage image, IntDisjointSets ds) {
+		label(new RasterRows(image), ds);
+	}
+
+	/**
+	 * @param rows
+	 *            the rows of pixel values to label
+	 * @param ds
+	 *            disjoint sets with one element per pixel, pixel (x, y) has
+	 *            id width * y + x
+	 */
+	public static void label(PixelRows rows, IntDisjointSets ds) {
+		int width = rows.getWidth();
+		int height = rows.getHeight();
+		int[] above = new int[width];
+		int[] row = new int[width];
+
+		// first pass: union neighbors with the same value
+		for (int y = 0; y < height; y++) {
+			rows.read(y, row);
+			labelRow(ds, row, y == 0 ? null : above, width * y, width);
+			int[] temp = above;
+			above = row;
+			row = temp;
+		}
+
+		// second pass: resolve every pixel to its root
+		for (int i = 0; i < width * height; i++) {
+			ds.find(i);
+		}
+	}
+
+	/**
+	 * @param rows
+	 *            the rows of pixel values to label
+	 * @param ds
+	 *            disjoint sets with one element per pixel, pixel (x, y) has
+	 *            id width * y + x
+	 * @param connectivity
+	 *            which pixels count as neighbors
+	 */
+	public static void label(PixelRows rows, IntDisjointSets ds, Connectivity connectivity) {
+		if (connectivity == Connectivity.FOUR) {
+			label(rows, ds);
+			return;
+		}
+		labelBlocks(rows, ds, 0, rows.getHeight());
+		for (int i = 0; i < rows.getWidth() * rows.getHeight(); i++) {
+			ds.find(i);
+		}
+	}
+
+	/**
+	 * @param ds
+	 *            disjoint sets with one element per pixel
+	 * @param row
+	 *            the values of the row being labeled
+	 * @param above
+	 *            the values of the row above, null if there is none
+	 * @param offset
+	 *            the id of the first pixel in the row
+	 * @param width
+	 *            the width of the image
+	 * 
+	 *            Unions every pixel of the row with its above and left
+	 *            neighbors if they have the same value. The unions are done in
+	 *            the same order as Detector always has, so the roots come out
+	 *            the same.
+	 */
+	static void labelRow(IntDisjointSets ds, int[] row, int[] above, int offset, int width) {
+		for (int x = 0; x < width; x++) {
+			int id = offset + x;
+			int root = id;
+			if (above != null && row[x] == above[x]) {
+				root = ds.union(id, ds.find(id - width));
+			}
+			if (x > 0 && row[x] == row[x - 1]) {
+				int left = ds.find(id - 1);
+				if (left != root) {
+					ds.union(root, left);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param rows
+	 *            the rows of pixel values to label
+	 * @param ds
+	 *            disjoint sets with one element per pixel
+	 * @param top
+	 *            the first row to label
+	 * @param bottom
+	 *            the row after the last row to label
+	 * 
+	 *            Unions the pixels from top to bottom with their 8 neighbors
+	 *            of the same value, two rows at a time. The rows above top are
+	 *            not looked at.
+	 */
+	static void labelBlocks(PixelRows rows, IntDisjointSets ds, int top, int bottom) {
+		int width = rows.getWidth();
+		int[] above = new int[width];
+		int[] upper = new int[width];
+		int[] lower = new int[width];
+		for (int y = top; y < bottom; y += 2) {
+			rows.read(y, upper);
+			boolean hasLower = y + 1 < bottom;
+			if (hasLower) {
+				rows.read(y + 1, lower);
+			}
+			labelBlockRow(ds, y == top ? null : above, upper, hasLower ? lower : null, width * y, width);
+			int[] temp = above;
+			above = lower;
+			lower = temp;
+		}
+	}
+
+	/**
+	 * @param ds
+	 *            disjoint sets with one element per pixel
+	 * @param above
+	 *            the values of the row above the blocks, null if there is none
+	 * @param upper
+	 *            the values of the upper row of the blocks
+	 * @param lower
+	 *            the values of the lower row of the blocks, null if there is
+	 *            none
+	 * @param offset
+	 *            the id of the first pixel in the upper row
+	 * @param width
+	 *            the width of the image
+	 * 
+	 *            Labels one row of 2x2 blocks. The pixels of one value in a
+	 *            block are labeled together as a group.
+	 */
+	private static void labelBlockRow(IntDisjointSets ds, int[] above, int[] upper, int[] lower, int offset,
+			int width) {
+		for (int x = 0; x < width; x += 2) {
+			// a b
+			// c d
+			// pixels outside the image count as background
+			int a = upper[x];
+			int b = x + 1 < width ? upper[x + 1] : 0;
+			int c = lower != null ? lower[x] : 0;
+			int d = lower != null && x + 1 < width ? lower[x + 1] : 0;
+			if ((a | b | c | d) == 0) {
+				continue;
+			}
+			if (a != 0) {
+				labelGroup(ds, above, upper, lower, offset, width, x, a, true, b == a, c == a, d == a);
+			}
+			if (b != 0 && b != a) {
+				labelGroup(ds, above, upper, lower, offset, width, x, b, false, true, c == b, d == b);
+			}
+			if (c != 0 && c != a && c != b) {
+				labelGroup(ds, above, upper, lower, offset, width, x, c, false, false, true, d == c);
+			}
+			if (d != 0 && d != a && d != b && d != c) {
+				labelGroup(ds, above, upper, lower, offset, width, x, d, false, false, false, true);
+			}
+		}
+	}
+
+	/**
+	 * @param ds
+	 *            disjoint sets with one element per pixel
+	 * @param above
+	 *            the values of the row above the block, null if there is none
+	 * @param upper
+	 *            the values of the upper row of the block
+	 * @param lower
+	 *            the values of the lower row of the block, null if there is
+	 *            none
+	 * @param offset
+	 *            the id of the first pixel in the upper row
+	 * @param width
+	 *            the width of the image
+	 * @param x
+	 *            the x of the left column of the block
+	 * @param value
+	 *            the value of the group
+	 * @param inA
+	 *            true if the upper left pixel is in the group
+	 * @param inB
+	 *            true if the upper right pixel is in the group
+	 * @param inC
+	 *            true if the lower left pixel is in the group
+	 * @param inD
+	 *            true if the lower right pixel is in the group
+	 * 
+	 *            Unions the pixels of the group, then unions the group with
+	 *            the labeled pixels of the same value around the block:
+	 * 
+	 *            p q1 q2 r
+	 *            s1 a b
+	 *            s2 c d
+	 * 
+	 *            s2 and s1, s1 and q1, q1 and q2, q2 and r and p and either of
+	 *            s1 or q1 touch, so if both are of the value they are one set
+	 *            already and only the first needs a union.
+	 */
+	private static void labelGroup(IntDisjointSets ds, int[] above, int[] upper, int[] lower, int offset, int width,
+			int x, int value, boolean inA, boolean inB, boolean inC, boolean inD) {
+		// the pixels of the block are still sets of their own
+		int root = -1;
+		if (inA) {
+			root = offset + x;
+		}
+		if (inB) {
+			root = root < 0 ? offset + x + 1 : ds.union(root, offset + x + 1);
+		}
+		if (inC) {
+			root = root < 0 ? offset + width + x : ds.union(root, offset + width + x);
+		}
+		if (inD) {
+			root = root < 0 ? offset + width + x + 1 : ds.union(root, offset + width + x + 1);
+		}
+
+		boolean left = x > 0;
+		boolean s1 = left && upper[x - 1] == value;
+		boolean s2 = left && lower != null && lower[x - 1] == value;
+		boolean p = left && above != null && above[x - 1] == value;
+		boolean q1 = above != null && above[x] == value;
+		boolean q2 = above != null && x + 1 < width && above[x + 1] == value;
+		boolean r = above != null && x + 2 < width && above[x + 2] == value;
+
+		boolean leftJoined = false;
+		if ((inA || inC) && (s1 || s2)) {
+			root = join(ds, root, s1 ? offset + x - 1 : offset + width + x - 1);
+			leftJoined = true;
+		}
+		boolean topJoined = false;
+		if ((inA || inB) && (q1 || q2)) {
+			if (!(leftJoined && s1 && q1)) {
+				root = join(ds, root, q1 ? offset - width + x : offset - width + x + 1);
+			}
+			topJoined = true;
+		}
+		if (inB && r && !(topJoined && q2)) {
+			root = join(ds, root, offset - width + x + 2);
+		}
+		if (inA && p && !s1 && !q1) {
+			join(ds, root, offset - width + x - 1);
+		}
+	}
+
+	/**
+	 * @param ds
+	 *            disjoint sets with one element per pixel
+	 * @param root
+	 *            the root of a set
+	 * @param id
+	 *            a pixel
+	 * @return the root of the set holding both
+	 */
+	private static int join(IntDisjointSets ds, int root, int id) {
+		int other = ds.find(id);
+		return other == root ? root : ds.union(root, other);
+	}
+
+	/**
+	 * @param image
+	 *            the (thresholded) image to label
+	 * @param ds
+	 *            disjoint sets with one element per pixel, pixel (x, y) has
+	 *            id width * y + x
+	 * @param threads
+	 *            the number of threads to label with
+	 */
+	public static void labelParallel(BufferedImage image, IntDisjointSets ds, int threads) {
+		labelParallel(new RasterRows(image), ds, threads);
+	}
+
+	/**
+	 * @param rows
+	 *            the rows of pixel values to label
+	 * @param ds
+	 *            disjoint sets with one element per pixel, pixel (x, y) has
+	 *            id width * y + x
+	 * @param threads
+	 *            the number of threads to label with
+	 */
+	public static void labelParallel(PixelRows rows, IntDisjointSets ds, int threads) {
+		labelParallel(rows, ds, threads, Connectivity.FOUR);
+	}
+
+	/**
+	 * @param rows
+	 *            the rows of pixel values to label
+	 * @param ds
+	 *            disjoint sets with one element per pixel, pixel (x, y) has
+	 *            id width * y + x
+	 * @param threads
+	 *            the number of threads to label with
+	 * @param connectivity
+	 *            which pixels count as neighbors
+	 */
+	public static void labelParallel(PixelRows rows, IntDisjointSets ds, int threads, Connectivity connectivity) {
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			labelParallel(rows, ds, pool, connectivity);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * @param rows
+	 *            the rows of pixel values to label
+	 * @param ds
+	 *            disjoint sets with one element per pixel, pixel (x, y) has
+	 *            id width * y + x
+	 * @param pool
+	 *            the threads to label with, left running afterwards so it
+	 *            can be used for the next picture
+	 * @param connectivity
+	 *            which pixels count as neighbors
+	 */
+	public static void labelParallel(PixelRows rows, IntDisjointSets ds, ForkJoinPool pool, Connectivity connectivity) {
+		int height = rows.getHeight();
+		// a few strips per thread so uneven strips still balance out
+		int stripRows = Math.max(MIN_STRIP_ROWS, height / (pool.getParallelism() * 4));
+		pool.invoke(new StripTask(rows, ds, 0, height, stripRows, connectivity));
+		pool.invoke(new ResolveTask(rows.getWidth(), ds, 0, height, stripRows));
+		// the strips unioned at the same time, so the sets are counted again
+		ds.countComponents();
+	}
+
+	/**
+	 * @param mask
+	 *            the thresholded picture, one byte per pixel in row-major
+	 *            order
+	 * @param ids
+	 *            the numbers of the pixels of the mask, see TileIds
+	 * @param ds
+	 *            disjoint sets with ids.getElementCount() elements
+	 * @param connectivity
+	 *            which pixels count as neighbors
+	 * @param pool
+	 *            the threads to label the tiles with, null to label them on
+	 *            the calling thread
+	 * 
+	 *            Unions every FOREGROUND pixel with the FOREGROUND pixels
+	 *            around it. Background is never unioned.
+	 */
+	public static void labelTiles(byte[] mask, TileIds ids, IntDisjointSets ds, Connectivity connectivity,
+			ForkJoinPool pool) {
+		boolean diagonals = connectivity == Connectivity.EIGHT;
+		int tiles = ids.getTileCount();
+		if (pool == null) {
+			for (int c = 0; c < tiles; c++) {
+				labelTile(mask, ids, ds, diagonals, c);
+			}
+		} else {
+			// every tile only unions its own elements
+			pool.submit(() -> IntStream.range(0, tiles).parallel()
+					.forEach(c -> labelTile(mask, ids, ds, diagonals, c))).join();
+			ds.countComponents();
+		}
+		for (int c = 0; c < tiles; c++) {
+			joinTile(mask, ids, ds, diagonals, c);
+		}
+	}
+
+	/**
+	 * @param mask
+	 *            the thresholded picture
+	 * @param ids
+	 *            the numbers of the pixels of the mask
+	 * @param ds
+	 *            disjoint sets with ids.getElementCount() elements
+	 * @param diagonals
+	 *            true if the upper left and upper right pixels are neighbors
+	 *            too
+	 * @param c
+	 *            the number of the tile
+	 * 
+	 *            Unions the pixels of the tile with the pixels before them in
+	 *            the tile, the same way LargeDetector does for a whole
+	 *            picture.
+	 */
+	private static void labelTile(byte[] mask, TileIds ids, IntDisjointSets ds, boolean diagonals, int c) {
+		int width = ids.getWidth();
+		int x0 = ids.getTileX(c);
+		int y0 = ids.getTileY(c);
+		int tileWidth = Math.min(TileIds.TILE_SIZE, width - x0);
+		int tileHeight = Math.min(TileIds.TILE_SIZE, ids.getHeight() - y0);
+		int base = c << (2 * TileIds.TILE_SHIFT);
+		for (int ty = 0; ty < tileHeight; ty++) {
+			int offset = width * (y0 + ty) + x0;
+			int row = base + (ty << TileIds.TILE_SHIFT);
+			for (int tx = 0; tx < tileWidth; tx++) {
+				if (mask[offset + tx] != Detector.FOREGROUND) {
+					continue;
+				}
+				int id = row + tx;
+				int root = id;
+				if (tx > 0 && mask[offset + tx - 1] == Detector.FOREGROUND) {
+					root = join(ds, root, id - 1);
+				}
+				if (ty > 0) {
+					int above = offset + tx - width;
+					if (diagonals && tx > 0 && mask[above - 1] == Detector.FOREGROUND) {
+						root = join(ds, root, id - TileIds.TILE_SIZE - 1);
+					}
+					if (mask[above] == Detector.FOREGROUND) {
+						root = join(ds, root, id - TileIds.TILE_SIZE);
+					}
+					if (diagonals && tx + 1 < tileWidth && mask[above + 1] == Detector.FOREGROUND) {
+						root = join(ds, root, id - TileIds.TILE_SIZE + 1);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param mask
+	 *            the thresholded picture
+	 * @param ids
+	 *            the numbers of the pixels of the mask
+	 * @param ds
+	 *            disjoint sets with ids.getElementCount() elements
+	 * @param diagonals
+	 *            true if the upper left and upper right pixels are neighbors
+	 *            too
+	 * @param c
+	 *            the number of the tile
+	 * 
+	 *            Unions the pixels on the top, left and (for diagonals)
+	 *            right edges of the tile with their neighbors before them in
+	 *            raster order that are in other tiles. Every pair of
+	 *            neighbors in different tiles is looked at once, from the
+	 *            tile of the later pixel.
+	 */
+	private static void joinTile(byte[] mask, TileIds ids, IntDisjointSets ds, boolean diagonals, int c) {
+		int width = ids.getWidth();
+		int x0 = ids.getTileX(c);
+		int y0 = ids.getTileY(c);
+		int x1 = Math.min(x0 + TileIds.TILE_SIZE, width);
+		int y1 = Math.min(y0 + TileIds.TILE_SIZE, ids.getHeight());
+		int reach = diagonals ? 1 : 0;
+		// the top row and the row above it
+		if (y0 > 0) {
+			for (int x = x0; x < x1; x++) {
+				if (mask[width * y0 + x] == Detector.FOREGROUND) {
+					int root = ds.find(ids.toElement(x, y0));
+					for (int dx = Math.max(0, x - reach); dx <= Math.min(width - 1, x + reach); dx++) {
+						if (mask[width * (y0 - 1) + dx] == Detector.FOREGROUND) {
+							root = join(ds, root, ids.toElement(dx, y0 - 1));
+						}
+					}
+				}
+			}
+		}
+		// the left column and the column before it, the corner was done above
+		if (x0 > 0) {
+			for (int y = y0; y < y1; y++) {
+				if (mask[width * y + x0] == Detector.FOREGROUND) {
+					int root = ds.find(ids.toElement(x0, y));
+					if (mask[width * y + x0 - 1] == Detector.FOREGROUND) {
+						root = join(ds, root, ids.toElement(x0 - 1, y));
+					}
+					if (diagonals && y > y0 && mask[width * (y - 1) + x0 - 1] == Detector.FOREGROUND) {
+						join(ds, root, ids.toElement(x0 - 1, y - 1));
+					}
+				}
+			}
+		}
+		// the right column and the upper right pixel in the next tile
+		if (diagonals && x1 < width) {
+			for (int y = y0 + 1; y < y1; y++) {
+				if (mask[width * y + x1 - 1] == Detector.FOREGROUND
+						&& mask[width * (y - 1) + x1] == Detector.FOREGROUND) {
+					join(ds, ds.find(ids.toElement(x1 - 1, y)), ids.toElement(x1, y - 1));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param image
+	 *            the (thresholded) image to label
+	 * @param ds
+	 *            thread-safe disjoint sets with one element per pixel, pixel
+	 *            (x, y) has id width * y + x
+	 * @param threads
+	 *            the number of threads to label with
+	 * 
+	 *            Every strip unions with the row above it as it goes, so strips
+	 *            can run in any order and no merge step is needed.
+	 */
+	public static void labelParallel(BufferedImage image, ConcurrentDisjointSets ds, int threads) {
+		labelParallel(new RasterRows(image), ds, threads);
+	}
+
+	/**
+	 * @param rows
+	 *            the rows of pixel values to label
+	 * @param ds
+	 *            thread-safe disjoint sets with one element per pixel
+	 * @param threads
+	 *            the number of threads to label with
+	 */
+	public static void labelParallel(PixelRows rows, ConcurrentDisjointSets ds, int threads) {
+		int width = rows.getWidth();
+		int height = rows.getHeight();
+		int stripRows = Math.max(MIN_STRIP_ROWS, height / (threads * 4));
+		int strips = (height + stripRows - 1) / stripRows;
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			pool.submit(() -> IntStream.range(0, strips).parallel().forEach(strip -> {
+				int top = strip * stripRows;
+				int bottom = Math.min(height, top + stripRows);
+				int[] above = new int[width];
+				int[] row = new int[width];
+				if (top > 0) {
+					rows.read(top - 1, above);
+				}
+				for (int y = top; y < bottom; y++) {
+					rows.read(y, row);
+					int offset = width * y;
+					for (int x = 0; x < width; x++) {
+						if (y > 0 && row[x] == above[x]) {
+							ds.union(offset + x, offset + x - width);
+						}
+						if (x > 0 && row[x] == row[x - 1]) {
+							ds.union(offset + x, offset + x - 1);
+						}
+					}
+					int[] temp = above;
+					above = row;
+					row = temp;
+				}
+			})).join();
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	// strips are never split below this many rows
+	private static final int MIN_STRIP_ROWS = 32;
+
+	/**
+	 * Labels the rows from top to bottom (exclusive). Halves are labeled in
+	 * parallel and then joined at the row where they meet. Every set only
+	 * ever holds ids inside the rows of the task touching it, so tasks never
+	 * touch the same part of ds.
+	 */
+	private static class StripTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private PixelRows rows;
+		private IntDisjointSets ds;
+		private int top;
+		private int bottom;
+		private int stripRows;
+		private Connectivity connectivity;
+
+		/**
+		 * @param rows
+		 *            the rows of pixel values to label
+		 * @param ds
+		 *            disjoint sets with one element per pixel
+		 * @param top
+		 *            the first row of the strip
+		 * @param bottom
+		 *            the row after the last row of the strip
+		 * @param stripRows
+		 *            the most rows a task labels by itself
+		 * @param connectivity
+		 *            which pixels count as neighbors
+		 */
+		public StripTask(PixelRows rows, IntDisjointSets ds, int top, int bottom, int stripRows,
+				Connectivity connectivity) {
+			this.rows = rows;
+			this.ds = ds;
+			this.top = top;
+			this.bottom = bottom;
+			this.stripRows = stripRows;
+			this.connectivity = connectivity;
+		}
+
+		/**
+		 * Labels the strip, splitting it first if it is too tall
+		 */
+		protected void compute() {
+			int width = rows.getWidth();
+			if (bottom - top <= stripRows && connectivity == Connectivity.EIGHT) {
+				labelBlocks(rows, ds, top, bottom);
+				return;
+			}
+			if (bottom - top <= stripRows) {
+				int[] above = new int[width];
+				int[] row = new int[width];
+				for (int y = top; y < bottom; y++) {
+					rows.read(y, row);
+					labelRow(ds, row, y == top ? null : above, width * y, width);
+					int[] temp = above;
+					above = row;
+					row = temp;
+				}
+				return;
+			}
+
+			int middle = top + (bottom - top) / 2;
+			invokeAll(new StripTask(rows, ds, top, middle, stripRows, connectivity),
+					new StripTask(rows, ds, middle, bottom, stripRows, connectivity));
+
+			// merge across the boundary between the two halves
+			int[] above = new int[width];
+			int[] row = new int[width];
+			rows.read(middle - 1, above);
+			rows.read(middle, row);
+			int offset = width * middle;
+			if (connectivity == Connectivity.EIGHT) {
+				for (int x = 0; x < width; x++) {
+					if (row[x] == 0) {
+						continue;
+					}
+					int root = ds.find(offset + x);
+					for (int dx = Math.max(0, x - 1); dx <= Math.min(width - 1, x + 1); dx++) {
+						if (above[dx] == row[x]) {
+							root = RasterLabeler.join(ds, root, offset - width + dx);
+						}
+					}
+				}
+				return;
+			}
+			for (int x = 0; x < width; x++) {
+				if (row[x] == above[x]) {
+					int root = ds.find(offset + x);
+					int rootAbove = ds.find(offset + x - width);
+					if (root != rootAbove) {
+						ds.union(root, rootAbove);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Resolves every pixel in the rows from top to bottom (exclusive) to its
+	 * root. No unions happen any more, so concurrent finds only ever write a
+	 * pixel's real root (or another ancestor of it) over its parent.
+	 */
+	private static class ResolveTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private int width;
+		private IntDisjointSets ds;
+		private int top;
+		private int bottom;
+		private int stripRows;
+
+		/**
+		 * @param width
+		 *            the width of the image
+		 * @param ds
+		 *            disjoint sets with one element per pixel
+		 * @param top
+		 *            the first row to resolve
+		 * @param bottom
+		 *            the row after the last row to resolve
+		 * @param stripRows
+		 *            the most rows a task resolves by itself
+		 */
+		public ResolveTask(int width, IntDisjointSets ds, int top, int bottom, int stripRows) {
+			this.width = width;
+			this.ds = ds;
+			this.top = top;
+			this.bottom = bottom;
+			this.stripRows = stripRows;
+		}
+
+		/**
+		 * Resolves the rows, splitting them first if there are too many
+		 */
+		protected void compute() {
+			if (bottom - top <= stripRows) {
+				for (int i = width * top; i < width * bottom; i++) {
+					ds.find(i);
+				}
+				return;
+			}
+			int middle = top + (bottom - top) / 2;
+			invokeAll(new ResolveTask(width, ds, top, middle, stripRows),
+					new ResolveTask(width, ds, middle, bottom, stripRows));
+		}
+	}
+}
@@ -0,0 +1,94 @@
+/**
+ * Reads whole rows of packed RGB values out of a BufferedImage. The common
+ * image types are read straight from the raster's backing int[] or byte[],
+ * anything else falls back to one bulk getRGB call per row.
+ */
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+public class RasterRows implements PixelRows {
+	private BufferedImage image;
+
+	/**
+	 * @param image
+	 *            the image whose rows will be read
+	 */
+	public RasterRows(BufferedImage image) {
+		if (image == null) {
+			throw new NullPointerException();
+		}
+		this.image = image;
+	}
+
+	/**
+	 * @return the number of pixels in a row
+	 */
+	public int getWidth() {
+		return image.getWidth();
+	}
+
+	/**
+	 * @return the number of rows
+	 */
+	public int getHeight() {
+		return image.getHeight();
+	}
+
+	/**
+	 * @param y
+	 *            the row to read
+	 * @param row
+	 *            filled with the 0xRRGGBB value of every pixel in the row
+	 */
+	public void read(int y, int[] row) {
+		read(image, y, row);
+	}
+
+	/**
+	 * @param image
+	 *            the image to read from
+	 * @param y
+	 *            the row to read
+	 * @param row
+	 *            filled with the 0xRRGGBB value of every pixel in the row,
+	 *            must be at least as long as the image is wide
+	 */
+	public static void read(BufferedImage image, int y, int[] row) {
+		int width = image.getWidth();
+		WritableRaster raster = image.getRaster();
+		int type = image.getType();
+		int tx = raster.getSampleModelTranslateX();
+		int ty = raster.getSampleModelTranslateY();
+
+		if (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB) {
+			SinglePixelPackedSampleModel sm = (SinglePixelPackedSampleModel) raster.getSampleModel();
+			DataBufferInt db = (DataBufferInt) raster.getDataBuffer();
+			int[] data = db.getData();
+			int start = db.getOffset() + sm.getOffset(-tx, y - ty);
+			for (int x = 0; x < width; x++) {
+				row[x] = data[start + x] & 0xffffff;
+			}
+		} else if (type == BufferedImage.TYPE_3BYTE_BGR || type == BufferedImage.TYPE_4BYTE_ABGR) {
+			ComponentSampleModel sm = (ComponentSampleModel) raster.getSampleModel();
+			DataBufferByte db = (DataBufferByte) raster.getDataBuffer();
+			byte[] data = db.getData();
+			int stride = sm.getPixelStride();
+			int[] bands = sm.getBandOffsets();
+			int index = db.getOffset() + (y - ty) * sm.getScanlineStride() - tx * stride;
+			for (int x = 0; x < width; x++) {
+				row[x] = ((data[index + bands[0]] & 0xff) << 16) | ((data[index + bands[1]] & 0xff) << 8)
+						| (data[index + bands[2]] & 0xff);
+				index += stride;
+			}
+		} else {
+			image.getRGB(0, y, width, 1, row, 0, width);
+			for (int x = 0; x < width; x++) {
+				row[x] = row[x] & 0xffffff;
+			}
+		}
+	}
+}
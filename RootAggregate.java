@@ -0,0 +1,15 @@
+/**
+ * Values kept for every set of an IntDisjointSets (a bounding box, a sum,
+ * ...) that can be combined in O(1) when two sets are unioned, so they never
+ * have to be recomputed from the members.
+ */
+public interface RootAggregate {
+
+	/**
+	 * @param root
+	 *            the root of the unioned set
+	 * @param other
+	 *            the old root of the set that was joined into it
+	 */
+	void merge(int root, int other);
+}
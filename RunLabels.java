@@ -0,0 +1,462 @@
+/**
+ * Labels an image as runs instead of pixels. Every row is encoded into runs
+ * of the same value (other than 0, which is background), and runs of the
+ * same value in rows next to each other are unioned where they touch, so
+ * the disjoint sets hold one element per run and a blob is the list of its
+ * runs. For solid blobs that cuts the unions and the memory by the average
+ * run length. A BitMask is encoded a word of 64 pixels at a time.
+ *
+ * The size, bounding box and coordinate sums of every blob are merged in
+ * O(1) on every union. The colors are summed over the runs of a blob when it
+ * is turned into a Blob, since only the k largest ever are.
+ */
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
+
+public class RunLabels implements RootAggregate {
+	private int width;
+	private int count; // the number of runs
+	// the runs in raster order, a run covers x from start to end (exclusive)
+	private int[] starts = new int[16];
+	private int[] ends = new int[16];
+	private int[] ys = new int[16];
+	private int[] values = new int[16];
+	private int[] rowStart; // the first run of every row, and the run count
+	private IntDisjointSets ds; // one element per run
+	private UnionFindStats counters; // given to ds, null for none
+
+	// kept for every root
+	private int[] sizes;
+	private int[] lefts;
+	private int[] tops;
+	private int[] rights;
+	private int[] bottoms;
+	private long[] sumXs;
+	private long[] sumYs;
+	private int[] firsts; // the first run, in raster order
+
+	/**
+	 * @param counters
+	 *            counts the finds and unions of the runs from the next call
+	 *            to label() on, null for none
+	 */
+	public void setStats(UnionFindStats counters) {
+		this.counters = counters;
+	}
+
+	/**
+	 * @param rows
+	 *            the rows of pixel values to label, usually a mask
+	 * @param connectivity
+	 *            which pixels count as neighbors
+	 *
+	 *            Encodes the rows into runs and unions the runs that touch.
+	 *            Anything labeled before is forgotten, but the run arrays and
+	 *            the disjoint sets are kept when they are big enough.
+	 */
+	public void label(PixelRows rows, Connectivity connectivity) {
+		width = rows.getWidth();
+		int height = rows.getHeight();
+		if (rowStart == null || rowStart.length != height + 1) {
+			rowStart = new int[height + 1];
+		}
+
+		// first pass: encode every row
+		count = 0;
+		int[] row = new int[width];
+		for (int y = 0; y < height; y++) {
+			rows.read(y, row);
+			rowStart[y] = count;
+			int x = 0;
+			while (x < width) {
+				int value = row[x];
+				int start = x;
+				while (x < width && row[x] == value) {
+					x++;
+				}
+				if (value != 0) {
+					addRun(start, x, y, value);
+				}
+			}
+		}
+		rowStart[height] = count;
+
+		startSets();
+		// second pass: union the runs of every row with the runs above
+		// them
+		for (int y = 1; y < height; y++) {
+			linkRow(y, connectivity);
+		}
+	}
+
+	/**
+	 * @param mask
+	 *            the thresholded picture, one bit per pixel
+	 * @param connectivity
+	 *            which pixels count as neighbors
+	 *
+	 *            Same as label(PixelRows), but the runs are read a word at a
+	 *            time: the ends of a run are found with
+	 *            Long.numberOfTrailingZeros, and words that are all background
+	 *            (or all foreground inside a run) are skipped in one step,
+	 *            as are whole bands the mask knows to be empty. Rows that do
+	 *            not touch the row above, found by ANDing their words, are not
+	 *            linked at all.
+	 */
+	public void label(BitMask mask, Connectivity connectivity) {
+		width = mask.getWidth();
+		int height = mask.getHeight();
+		int stride = mask.getStride();
+		if (rowStart == null || rowStart.length != height + 1) {
+			rowStart = new int[height + 1];
+		}
+
+		// first pass: encode every row
+		count = 0;
+		for (int y = 0; y < height; y++) {
+			rowStart[y] = count;
+			if (mask.isBandEmpty(y)) {
+				// no runs in any row of the band
+				for (int end = mask.getBandEnd(y); y + 1 < end; y++) {
+					rowStart[y + 1] = count;
+				}
+				continue;
+			}
+			int open = -1; // the start of the run not yet ended, -1 if none
+			for (int w = 0; w < stride; w++) {
+				long word = mask.getWord(y, w);
+				if (word == (open < 0 ? 0 : -1L)) {
+					continue;
+				}
+				// look for the next 1 outside a run and the next 0 inside one
+				long edges = open < 0 ? word : ~word;
+				while (edges != 0) {
+					int bit = Long.numberOfTrailingZeros(edges);
+					if (open < 0) {
+						open = (w << 6) + bit;
+						edges = ~word & (-1L << bit);
+					} else {
+						addRun(open, (w << 6) + bit, y, Detector.FOREGROUND);
+						open = -1;
+						edges = word & (-1L << bit);
+					}
+				}
+			}
+			if (open >= 0) {
+				addRun(open, width, y, Detector.FOREGROUND);
+			}
+		}
+		rowStart[height] = count;
+
+		startSets();
+		// second pass: union the runs of every row with the runs above
+		// them, if any pixel of the row has a neighbor above
+		for (int y = 1; y < height; y++) {
+			if (rowStart[y] > rowStart[y - 1] && rowStart[y + 1] > rowStart[y]
+					&& touchesAbove(mask, y, connectivity)) {
+				linkRow(y, connectivity);
+			}
+		}
+	}
+
+	/**
+	 * @param mask
+	 *            the thresholded picture
+	 * @param y
+	 *            a row other than the first
+	 * @param connectivity
+	 *            which pixels count as neighbors
+	 * @return true if a set pixel of row y has a set neighbor in row y - 1
+	 */
+	private static boolean touchesAbove(BitMask mask, int y, Connectivity connectivity) {
+		int stride = mask.getStride();
+		long previous = 0;
+		long above = stride > 0 ? mask.getWord(y - 1, 0) : 0;
+		for (int w = 0; w < stride; w++) {
+			long following = w + 1 < stride ? mask.getWord(y - 1, w + 1) : 0;
+			long reach = above;
+			if (connectivity == Connectivity.EIGHT) {
+				// a pixel also touches the pixels above it to the left and
+				// right, which may be in the words next to it
+				reach |= above << 1 | previous >>> 63 | above >>> 1 | following << 63;
+			}
+			if ((mask.getWord(y, w) & reach) != 0) {
+				return true;
+			}
+			previous = above;
+			above = following;
+		}
+		return false;
+	}
+
+	/**
+	 * Puts every run in a set of its own, with the values of the run
+	 */
+	private void startSets() {
+		if (ds == null) {
+			ds = new IntDisjointSets(count);
+		} else {
+			ds.reset(count);
+		}
+		if (sizes == null || sizes.length < count) {
+			sizes = new int[starts.length];
+			lefts = new int[starts.length];
+			tops = new int[starts.length];
+			rights = new int[starts.length];
+			bottoms = new int[starts.length];
+			sumXs = new long[starts.length];
+			sumYs = new long[starts.length];
+			firsts = new int[starts.length];
+		}
+		for (int i = 0; i < count; i++) {
+			int length = ends[i] - starts[i];
+			sizes[i] = length;
+			lefts[i] = starts[i];
+			rights[i] = ends[i] - 1;
+			tops[i] = ys[i];
+			bottoms[i] = ys[i];
+			sumXs[i] = (long) (starts[i] + ends[i] - 1) * length / 2;
+			sumYs[i] = (long) ys[i] * length;
+			firsts[i] = i;
+		}
+		ds.setAggregate(this);
+		ds.setStats(counters);
+	}
+
+	/**
+	 * @param y
+	 *            a row other than the first
+	 * @param connectivity
+	 *            which pixels count as neighbors
+	 *
+	 *            Unions the runs of row y with the runs of the same value
+	 *            above them. The runs of a row are in order, so both rows are
+	 *            walked once.
+	 */
+	private void linkRow(int y, Connectivity connectivity) {
+		int slack = connectivity == Connectivity.EIGHT ? 1 : 0;
+		int j = rowStart[y - 1];
+		int aboveEnd = rowStart[y];
+		for (int i = rowStart[y]; i < rowStart[y + 1]; i++) {
+			while (j < aboveEnd && ends[j] + slack <= starts[i]) {
+				j++;
+			}
+			int root = ds.find(i);
+			for (int k = j; k < aboveEnd && starts[k] < ends[i] + slack; k++) {
+				if (values[k] == values[i]) {
+					int other = ds.find(k);
+					if (other != root) {
+						root = ds.union(root, other);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param start
+	 *            the first x of the run
+	 * @param end
+	 *            the x after the last x of the run
+	 * @param y
+	 *            the row of the run
+	 * @param value
+	 *            the value of the pixels of the run
+	 */
+	private void addRun(int start, int end, int y, int value) {
+		if (count == starts.length) {
+			int capacity = 2 * count;
+			starts = Arrays.copyOf(starts, capacity);
+			ends = Arrays.copyOf(ends, capacity);
+			ys = Arrays.copyOf(ys, capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+		starts[count] = start;
+		ends[count] = end;
+		ys[count] = y;
+		values[count] = value;
+		count++;
+	}
+
+	/**
+	 * @param root
+	 *            the root of the unioned set
+	 * @param other
+	 *            the old root of the set that was joined into it
+	 */
+	public void merge(int root, int other) {
+		sizes[root] += sizes[other];
+		lefts[root] = Math.min(lefts[root], lefts[other]);
+		tops[root] = Math.min(tops[root], tops[other]);
+		rights[root] = Math.max(rights[root], rights[other]);
+		bottoms[root] = Math.max(bottoms[root], bottoms[other]);
+		sumXs[root] += sumXs[other];
+		sumYs[root] += sumYs[other];
+		firsts[root] = Math.min(firsts[root], firsts[other]);
+	}
+
+	/**
+	 * @return the number of runs
+	 */
+	public int getRunCount() {
+		return count;
+	}
+
+	/**
+	 * @param best
+	 *            offered every blob as (pixels, first pixel id, root), and
+	 *            sorted afterwards
+	 * @return the number of blobs
+	 *
+	 *            A blob is offered at its first run, so blobs rank the same
+	 *            as when they are labeled by pixel.
+	 */
+	public int rank(TopK best) {
+		// only the roots are visited, a blob is offered at its first run
+		int[] blobs = new int[1];
+		ds.forEachComponent((root, runs) -> {
+			blobs[0]++;
+			best.offer(sizes[root], (long) ys[firsts[root]] * width + starts[firsts[root]], root);
+		});
+		best.sort();
+		return blobs[0];
+	}
+
+	/**
+	 * @param root
+	 *            the root of a blob
+	 * @return the number of pixels in the blob
+	 */
+	public int size(int root) {
+		assertIsRoot(root);
+		return sizes[root];
+	}
+
+	/**
+	 * @param root
+	 *            the root of a blob
+	 * @return the smallest x of any pixel in it
+	 */
+	public int getLeft(int root) {
+		assertIsRoot(root);
+		return lefts[root];
+	}
+
+	/**
+	 * @param root
+	 *            the root of a blob
+	 * @return the smallest y of any pixel in it
+	 */
+	public int getTop(int root) {
+		assertIsRoot(root);
+		return tops[root];
+	}
+
+	/**
+	 * @param root
+	 *            the root of a blob
+	 * @return the largest x of any pixel in it
+	 */
+	public int getRight(int root) {
+		assertIsRoot(root);
+		return rights[root];
+	}
+
+	/**
+	 * @param root
+	 *            the root of a blob
+	 * @return the largest y of any pixel in it
+	 */
+	public int getBottom(int root) {
+		assertIsRoot(root);
+		return bottoms[root];
+	}
+
+	/**
+	 * @param image
+	 *            the picture to draw on
+	 * @param root
+	 *            the root of a blob
+	 * @param rgb
+	 *            the color to fill the blob with
+	 *
+	 *            Fills the blob one run at a time.
+	 */
+	public void fill(BufferedImage image, int root, int rgb) {
+		assertIsRoot(root);
+		int[] line = new int[width];
+		Arrays.fill(line, rgb);
+		PrimitiveIterator.OfInt runs = ds.get(root);
+		while (runs.hasNext()) {
+			int run = runs.nextInt();
+			image.setRGB(starts[run], ys[run], ends[run] - starts[run], 1, line, 0, width);
+		}
+	}
+
+	/**
+	 * @param root
+	 *            the root of a blob
+	 * @param firstId
+	 *            the id of the first pixel of the blob in raster order
+	 * @param image
+	 *            the picture the blob was found in, for its colors
+	 * @return the blob
+	 */
+	public Blob toBlob(int root, int firstId, BufferedImage image) {
+		assertIsRoot(root);
+		long red = 0;
+		long green = 0;
+		long blue = 0;
+		int[] line = new int[width];
+		PrimitiveIterator.OfInt runs = ds.get(root);
+		while (runs.hasNext()) {
+			int run = runs.nextInt();
+			int length = ends[run] - starts[run];
+			image.getRGB(starts[run], ys[run], length, 1, line, 0, width);
+			for (int x = 0; x < length; x++) {
+				red += (line[x] >> 16) & 0xff;
+				green += (line[x] >> 8) & 0xff;
+				blue += line[x] & 0xff;
+			}
+		}
+		return new Blob(sizes[root], lefts[root], tops[root], rights[root], bottoms[root], firstId % width,
+				firstId / width, sumXs[root], sumYs[root], red, green, blue);
+	}
+
+	/**
+	 * @param root
+	 *            the element in question
+	 */
+	private void assertIsRoot(int root) {
+		if (root < 0 || root >= count || ds.find(root) != root) {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * @param args
+	 *            command line arguments Main method
+	 */
+	public static void main(String[] args) {
+		// a U shape, whose arms only join in the last row
+		byte[] mask = { 1, 1, 0, 1, 1, //
+				1, 1, 0, 1, 1, //
+				1, 1, 1, 1, 1 };
+		RunLabels labels = new RunLabels();
+		labels.label(new MaskRows(mask, 5, 3), Connectivity.FOUR);
+		TopK best = new TopK(2);
+		System.out.println(labels.getRunCount() + " runs, " + labels.rank(best) + " blob"); // 5 runs, 1 blob
+		int root = (int) best.getId(0);
+		System.out.println(labels.size(root) + " pixels, (" + labels.getLeft(root) + ", " + labels.getTop(root)
+				+ ") to (" + labels.getRight(root) + ", " + labels.getBottom(root) + ")"); // 13 pixels, (0, 0) to (4, 2)
+
+		// the same U, one bit per pixel
+		BitMask bits = new BitMask(5, 3);
+		bits.setWord(0, 0, 0b11011);
+		bits.setWord(1, 0, 0b11011);
+		bits.setWord(2, 0, 0b11111);
+		labels.label(bits, Connectivity.FOUR);
+		System.out.println(labels.getRunCount() + " runs, " + labels.rank(new TopK(2)) + " blob"); // 5 runs, 1 blob
+	}
+}
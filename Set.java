@@ -3,74 +3,60 @@
  * @author Helena Gray
  * @version 11-29-2018
  * 
- * This class represents a set of objects using a linked list implementation. 
- * This is used in DisjointSets<T> to store actual data in the same sets.
+ * This class represents a set of objects as a linked list of arrays (a
+ * rope), so walking a big set reads the items one array after another
+ * instead of chasing a node per item. This is used in DisjointSets<T> to
+ * store actual data in the same sets.
+ *
+ * addAll() still splices in O(1): a small set is copied into the last
+ * array, a bigger one is linked on as it is. Sets built from many unions
+ * end up in a few big arrays, which a Spliterator can split evenly, so
+ * stream().parallel() over a set runs on several threads.
 
  * Task 1. Set<T> class (10%)
  */
 
 import java.util.AbstractCollection;
 import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
 
 public class Set<T> extends AbstractCollection<T> {
-	private Node head = null;
-	private Node tail = null;
+	// sets this small are copied by addAll instead of linked on
+	private static final int COPY_LIMIT = 32;
+	// the most items an array gets, arrays double up to this as a set grows
+	private static final int MAX_CHUNK = 1024;
+
+	private Chunk head = null;
+	private Chunk tail = null;
 	private int size = 0;
 
 	/**
-	 * This class represents a node which will be used to implement the set
-	 * class.
+	 * An array of items, and the next one in the set
 	 */
-	private static class Node<T> {
-		private T value;
-		private Node<T> next;
-
-		/**
-		 * @param newValue
-		 *            value of node
-		 */
-		public Node(T newValue) {
-			value = newValue;
-			next = null;
-		}
+	private static class Chunk {
+		private Object[] items;
+		private int count; // the items in use, from the start of the array
+		private Chunk next;
 
 		/**
-		 * @return value of node
+		 * @param capacity
+		 *            the number of items the chunk can hold
 		 */
-		public T getValue() {
-			return value;
-		}
-
-		/**
-		 * @param newValue
-		 *            the new value of the node
-		 */
-		public void setValue(T newValue) {
-			value = newValue;
-		}
-
-		/**
-		 * @return returns the next node
-		 */
-		public Node getNext() {
-			return next;
-		}
-
-		/**
-		 * @param newNode
-		 *            the new next node
-		 */
-		public void setNext(Node newNode) {
-			next = newNode;
-		}
-
-		/**
-		 * @return the string version of the node value
-		 */
-		public String toString() {
-			return value.toString();
+		public Chunk(int capacity) {
+			items = new Object[capacity];
 		}
+	}
 
+	/**
+	 * @param o
+	 *            an item read back from a chunk
+	 * @return the item as the type it was added as. Only items of type T
+	 *         are ever put in a chunk, so the cast cannot fail.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> T item(Object o) {
+		return (T) o;
 	}
 
 	/**
@@ -84,19 +70,22 @@ public class Set<T> extends AbstractCollection<T> {
 	/**
 	 * @param item
 	 *            to be added to list
-	 * @return if the node can be added true will be returned, else a null
+	 * @return if the item can be added true will be returned, else a null
 	 *         pointer exception will be thrown O(1)
 	 */
 	public boolean add(T item) {
 		if (item != null) {
-			Node newEnd = new Node(item);
-			if (head == null) {
-				head = newEnd;
-				tail = head;
-			} else {
-				tail.setNext(newEnd);
-				tail = tail.getNext();
+			if (tail == null || tail.count == tail.items.length) {
+				// every new array is as big as the set, up to MAX_CHUNK
+				Chunk newEnd = new Chunk(Math.min(MAX_CHUNK, Math.max(1, size)));
+				if (head == null) {
+					head = newEnd;
+				} else {
+					tail.next = newEnd;
+				}
+				tail = newEnd;
 			}
+			tail.items[tail.count++] = item;
 			size++;
 			return true;
 		} else {
@@ -106,24 +95,31 @@ public class Set<T> extends AbstractCollection<T> {
 
 	/**
 	 * @param other
-	 *            the set to be added to the other set
-	 * @return true if set is not empty or null else null pointer exception will
-	 *         be thrown O(1)
+	 *            the set to be added to the other set, which shares its
+	 *            arrays with this set afterwards and should be cleared
+	 * @return true if set is not null else null pointer exception will be
+	 *         thrown O(1), since at most COPY_LIMIT items are copied
 	 */
 	public boolean addAll(Set<T> other) {
-		if (!isEmpty(other) || other != null) {
-			if (this.head == null) {
-				this.head = other.head;
-				this.tail = other.tail;
-			} else {
-				this.tail.setNext(other.head);
-				this.tail = other.tail;
+		if (other == null) {
+			throw new NullPointerException();
+		}
+		if (other.size <= COPY_LIMIT) {
+			for (Chunk chunk = other.head; chunk != null; chunk = chunk.next) {
+				for (int i = 0; i < chunk.count; i++) {
+					add(item(chunk.items[i]));
+				}
 			}
-			size = size + other.size();
 			return true;
+		}
+		if (this.head == null) {
+			this.head = other.head;
 		} else {
-			throw new NullPointerException();
+			this.tail.next = other.head;
 		}
+		this.tail = other.tail;
+		size = size + other.size();
+		return true;
 	}
 
 	/**
@@ -132,6 +128,7 @@ public class Set<T> extends AbstractCollection<T> {
 	public void clear() {
 		head = null;
 		tail = null;
+		size = 0;
 	}
 
 	/**
@@ -159,7 +156,9 @@ public class Set<T> extends AbstractCollection<T> {
 	 */
 	public Iterator<T> iterator() {
 		return new Iterator<T>() {
-			Node<T> current = head;
+			Chunk current = head;
+			int index = 0;
+			int left = size;
 
 			/**
 			 * @return the value of the next item in the set
@@ -169,20 +168,133 @@ public class Set<T> extends AbstractCollection<T> {
 				if (!hasNext()) {
 					throw new NullPointerException("No more items!");
 				}
-				Node<T> oldCurrent = current;
-				current = current.getNext();
-				return oldCurrent.getValue();
+				while (index == current.count) {
+					current = current.next;
+					index = 0;
+				}
+				left--;
+				return item(current.items[index++]);
 			}
 
 			/**
 			 * @return true if there is another value in the set and false if not
 			 */
 			public boolean hasNext() {
-				return (current != null);
+				return left > 0;
 			}
 		};
 	}
 
+	/**
+	 * @return a spliterator over the set that knows its exact size and
+	 *         splits it in halves, used by stream() and parallelStream()
+	 */
+	public Spliterator<T> spliterator() {
+		return new ChunkSpliterator<T>(head, 0, size);
+	}
+
+	/**
+	 * Goes over a run of items of a set, from an index in one of its arrays
+	 */
+	private static class ChunkSpliterator<T> implements Spliterator<T> {
+		private Chunk chunk;
+		private int index;
+		private int left; // the items still to go over
+
+		/**
+		 * @param chunk
+		 *            the array the run starts in
+		 * @param index
+		 *            where in the array it starts
+		 * @param left
+		 *            the number of items in the run
+		 */
+		public ChunkSpliterator(Chunk chunk, int index, int left) {
+			this.chunk = chunk;
+			this.index = index;
+			this.left = left;
+		}
+
+		/**
+		 * @param action
+		 *            given the next item, if there is one
+		 * @return true if there was one
+		 */
+		public boolean tryAdvance(Consumer<? super T> action) {
+			if (left == 0) {
+				return false;
+			}
+			while (index == chunk.count) {
+				chunk = chunk.next;
+				index = 0;
+			}
+			left--;
+			action.accept(item(chunk.items[index++]));
+			return true;
+		}
+
+		/**
+		 * @param action
+		 *            given every item left, an array at a time
+		 */
+		public void forEachRemaining(Consumer<? super T> action) {
+			while (left > 0) {
+				while (index == chunk.count) {
+					chunk = chunk.next;
+					index = 0;
+				}
+				int end = Math.min(chunk.count, index + left);
+				Object[] items = chunk.items;
+				for (int i = index; i < end; i++) {
+					action.accept(item(items[i]));
+				}
+				left -= end - index;
+				index = end;
+			}
+		}
+
+		/**
+		 * @return a spliterator over the first half of the items left, which
+		 *         this one no longer goes over, or null if there are fewer
+		 *         than 2. Finding the middle steps over whole arrays, so it
+		 *         takes time in the number of arrays, not items.
+		 */
+		public Spliterator<T> trySplit() {
+			if (left < 2) {
+				return null;
+			}
+			int half = left / 2;
+			Chunk middle = chunk;
+			int at = index;
+			int skip = half;
+			while (skip >= middle.count - at) {
+				skip -= middle.count - at;
+				middle = middle.next;
+				at = 0;
+			}
+			ChunkSpliterator<T> prefix = new ChunkSpliterator<T>(chunk, index, half);
+			chunk = middle;
+			index = at + skip;
+			left -= half;
+			return prefix;
+		}
+
+		/**
+		 * @return the exact number of items left
+		 */
+		public long estimateSize() {
+			return left;
+		}
+
+		/**
+		 * @return the items keep their order, are never null, and every
+		 *         split knows its exact size
+		 */
+		public int characteristics() {
+			return ORDERED | SIZED | SUBSIZED | NONNULL;
+		}
+	}
+
 	/**
 	 * @param args command line arguments
 	 * Main method
@@ -200,10 +312,8 @@ public class Set<T> extends AbstractCollection<T> {
 		testSet2.add("F");
 
 		testSet.addAll(testSet2);
-		Node value = testSet.head;
-		while (value != null) {
-			System.out.println("Value is: " + value.getValue());
-			value = value.getNext();
+		for (Object value : testSet) {
+			System.out.println("Value is: " + value);
 		}
 		Iterator it = testSet.iterator();
 		System.out.println(it.next());
@@ -219,5 +329,17 @@ public class Set<T> extends AbstractCollection<T> {
 			System.out.println("Good job!");
 		}
 
+		// a set joined from many small ones splits evenly
+		Set<Integer> big = new Set<Integer>();
+		for (int i = 0; i < 1000; i++) {
+			Set<Integer> part = new Set<Integer>();
+			for (int j = 0; j < 100; j++) {
+				part.add(100 * i + j);
+			}
+			big.addAll(part);
+		}
+		System.out.println(big.stream().parallel().mapToLong(Integer::longValue).sum()); // should be 4999950000
+		System.out.println(big.spliterator().trySplit().estimateSize()); // should be 50000
+
 	}
 }
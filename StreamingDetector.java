@@ -0,0 +1,571 @@
+/**
+ * This class detects blobs in images too big to hold in memory. The image
+ * is read a band of rows at a time through an ImageReader source region and
+ * labeled one row at a time, keeping only the labels of the row above and a
+ * union-find over the labels still in use. A blob is finished, and handed
+ * on, as soon as a row has no pixel of it.
+ *
+ * Memory is O(width * band rows) for the band being read and O(width) for
+ * everything else. Given PixelRows instead of a file name (a MappedRgbRows,
+ * say) the rows are read straight from them and nothing is decoded. Some readers (PNG for one) decode from the top of the
+ * image again for every source region, so taller bands trade memory for
+ * speed there.
+ */
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+public class StreamingDetector {
+	// bands hold about this many pixels unless setBandRows() says otherwise
+	private static final int BAND_PIXELS = 1 << 22;
+
+	private String imgFileName; // input image file name
+	private PixelRows rows; // read instead of the file, if not null
+	private Color blobColor; // the color of the blob we are detecting
+	private int okDist; // the distance between blobColor and the pixel which
+	// "still counts" as the color
+	private int bandRows = 0; // rows read at a time, 0 picks from BAND_PIXELS
+	private Connectivity connectivity = Connectivity.FOUR; // which pixels are neighbors
+	private long blobCount; // blobs found by the last detect()
+
+	/**
+	 * @param imgfile
+	 *            the name of the image file
+	 * @param blobColor
+	 *            the color of the blob to be detected
+	 * @param okDist
+	 *            the thresh hold from the color that is acceptable for a color
+	 *            considered the "same color" as the blobColor
+	 */
+	public StreamingDetector(String imgfile, Color blobColor, int okDist) {
+		this.imgFileName = imgfile;
+		this.blobColor = blobColor;
+		this.okDist = okDist;
+	}
+
+	/**
+	 * @param rows
+	 *            the rows of packed RGB values of the image
+	 * @param blobColor
+	 *            the color of the blob to be detected
+	 * @param okDist
+	 *            the thresh hold from the color that is acceptable for a color
+	 *            considered the "same color" as the blobColor
+	 */
+	public StreamingDetector(PixelRows rows, Color blobColor, int okDist) {
+		if (rows == null) {
+			throw new NullPointerException();
+		}
+		this.rows = rows;
+		this.blobColor = blobColor;
+		this.okDist = okDist;
+	}
+
+	/**
+	 * @param bandRows
+	 *            the number of rows to read from the file at a time
+	 */
+	public void setBandRows(int bandRows) {
+		if (bandRows < 1) {
+			throw new IllegalArgumentException("! Error: band rows should be greater than 0, current rows=" + bandRows);
+		}
+		this.bandRows = bandRows;
+	}
+
+	/**
+	 * @param connectivity
+	 *            which pixels count as neighbors in the next call to detect(),
+	 *            FOUR by default
+	 */
+	public void setConnectivity(Connectivity connectivity) {
+		if (connectivity == null) {
+			throw new NullPointerException();
+		}
+		this.connectivity = connectivity;
+	}
+
+	/**
+	 * @return the number of blobs found by the last call to detect()
+	 */
+	public long getBlobCount() {
+		return blobCount;
+	}
+
+	/**
+	 * @param k
+	 *            the number of blobs we are interested in
+	 * @return the k largest blobs, ranked the same way Detector ranks them
+	 * @throws IOException
+	 *             if the image cannot be read
+	 */
+	public List<Blob> detect(int k) throws IOException {
+		if (k < 1) {
+			throw new IllegalArgumentException("! Error: k should be greater than 0, current k=" + k);
+		}
+		// the ids in best are slots in kept, a kept blob takes the slot of
+		// the blob it drops
+		TopK best = new TopK(k);
+		ArrayList<Blob> kept = new ArrayList<Blob>();
+		detect(blob -> {
+			int slot = best.size() < k ? best.size() : (int) best.getWorstId();
+			long order = ((long) blob.getFirstY() << 32) | blob.getFirstX();
+			if (best.offer(blob.getSize(), order, slot)) {
+				if (slot == kept.size()) {
+					kept.add(blob);
+				} else {
+					kept.set(slot, blob);
+				}
+			}
+		});
+		best.sort();
+		ArrayList<Blob> blobs = new ArrayList<Blob>();
+		for (int i = 0; i < best.size(); i++) {
+			blobs.add(kept.get((int) best.getId(i)));
+		}
+		return blobs;
+	}
+
+	/**
+	 * @param sink
+	 *            given every blob as soon as it is finished
+	 * @throws IOException
+	 *             if the image cannot be read
+	 */
+	public void detect(Consumer<Blob> sink) throws IOException {
+		if (rows != null) {
+			int width = rows.getWidth();
+			int height = rows.getHeight();
+			int count = bandRows > 0 ? bandRows : Math.max(1, BAND_PIXELS / width);
+			RowLabeler labeler = new RowLabeler(width, connectivity, sink);
+			for (int top = 0; top < height; top += count) {
+				labelBand(new BandRows(rows, top, Math.min(count, height - top)), top, labeler);
+			}
+			labeler.finish();
+			blobCount = labeler.blobCount;
+			return;
+		}
+
+		ImageInputStream input = ImageIO.createImageInputStream(new File(imgFileName));
+		if (input == null) {
+			throw new IOException("Cannot open " + imgFileName);
+		}
+		try {
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+			if (!readers.hasNext()) {
+				throw new IOException("No reader for " + imgFileName);
+			}
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(input);
+				int width = reader.getWidth(0);
+				int height = reader.getHeight(0);
+				int rows = bandRows > 0 ? bandRows : Math.max(1, BAND_PIXELS / width);
+				RowLabeler labeler = new RowLabeler(width, connectivity, sink);
+				ImageReadParam param = reader.getDefaultReadParam();
+				for (int top = 0; top < height; top += rows) {
+					int count = Math.min(rows, height - top);
+					param.setSourceRegion(new Rectangle(0, top, width, count));
+					BufferedImage band = reader.read(0, param);
+					labelBand(new RasterRows(band), top, labeler);
+				}
+				labeler.finish();
+				blobCount = labeler.blobCount;
+			} finally {
+				reader.dispose();
+			}
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * @param band
+	 *            the rows of a band of the image
+	 * @param top
+	 *            the row of the image the band starts at
+	 * @param labeler
+	 *            labels the rows
+	 */
+	private void labelBand(PixelRows band, int top, RowLabeler labeler) {
+		int width = band.getWidth();
+		byte[] mask = Detector.threshMask(band, blobColor, okDist);
+		for (int y = 0; y < band.getHeight(); y++) {
+			band.read(y, labeler.colors);
+			labeler.scanRow(mask, width * y, top + y);
+		}
+	}
+
+	/**
+	 * Some rows of other PixelRows, as rows of their own
+	 */
+	private static class BandRows implements PixelRows {
+		private PixelRows rows;
+		private int top;
+		private int count;
+
+		/**
+		 * @param rows
+		 *            all the rows
+		 * @param top
+		 *            the first row of the band
+		 * @param count
+		 *            the number of rows in the band
+		 */
+		public BandRows(PixelRows rows, int top, int count) {
+			this.rows = rows;
+			this.top = top;
+			this.count = count;
+		}
+
+		/**
+		 * @return the number of pixels in a row
+		 */
+		public int getWidth() {
+			return rows.getWidth();
+		}
+
+		/**
+		 * @return the number of rows in the band
+		 */
+		public int getHeight() {
+			return count;
+		}
+
+		/**
+		 * @param y
+		 *            the row of the band to read
+		 * @param row
+		 *            filled with the value of every pixel in the row
+		 */
+		public void read(int y, int[] row) {
+			rows.read(top + y, row);
+		}
+	}
+
+	/**
+	 * @param k
+	 *            the number of blobs we are interested in
+	 *
+	 *            Prints the k largest blobs the same way Detector's
+	 *            outputResults() does. No images are written, since the
+	 *            image is never held in memory.
+	 */
+	public void outputResults(int k) {
+		List<Blob> blobs;
+		try {
+			blobs = detect(k);
+		} catch (IOException e) {
+			System.err.println("! Error: Failed to read " + this.imgFileName + ", error msg: " + e);
+			return;
+		}
+		System.out.println(blobs.size() + "/" + blobCount);
+		for (int i = 0; i < blobs.size(); i++) {
+			System.out.println("Blob " + (i + 1) + ": " + blobs.get(i).getSize() + " pixels");
+		}
+	}
+
+	/**
+	 * Labels one row at a time. Labels of the row above are 0..prevCount-1,
+	 * new labels of the current row are numbered after them, and after every
+	 * row the labels still in use are renumbered from 0 again, so there are
+	 * never more than width + 1 labels.
+	 */
+	private static class RowLabeler {
+		private int width;
+		private boolean diagonals; // the upper left and upper right pixels are neighbors too
+		private Consumer<Blob> sink;
+		private int[] prev; // labels of the row above, -1 for background
+		private int[] cur; // labels of the current row, -1 for background
+		private int[] colors; // the colors of the current row
+		private Stats stats; // stats of the labels in use
+		private Stats nextStats; // where the renumbered stats go
+		private int[] remap; // new number of every root still in use, -1 if none
+		private int prevCount; // labels the row above uses
+		private int labelCount; // labels in use
+		private long blobCount; // blobs handed to the sink
+
+		/**
+		 * @param width
+		 *            the width of the image
+		 * @param connectivity
+		 *            which pixels count as neighbors
+		 * @param sink
+		 *            given every blob as soon as it is finished
+		 */
+		public RowLabeler(int width, Connectivity connectivity, Consumer<Blob> sink) {
+			this.width = width;
+			this.diagonals = connectivity == Connectivity.EIGHT;
+			this.sink = sink;
+			prev = new int[width];
+			cur = new int[width];
+			colors = new int[width];
+			Arrays.fill(prev, -1);
+			// no row has more than (width + 1) / 2 runs, so the row above and
+			// the current row together never need more than width + 1 labels
+			stats = new Stats(width + 1);
+			nextStats = new Stats(width + 1);
+			remap = new int[width + 1];
+			Arrays.fill(remap, -1);
+		}
+
+		/**
+		 * @param mask
+		 *            the thresholded band
+		 * @param offset
+		 *            where the row starts in the mask
+		 * @param y
+		 *            the row of the image
+		 */
+		public void scanRow(byte[] mask, int offset, int y) {
+			labelCount = prevCount;
+			for (int x = 0; x < width; x++) {
+				if (mask[offset + x] != Detector.FOREGROUND) {
+					cur[x] = -1;
+					continue;
+				}
+				int label = x > 0 ? cur[x - 1] : -1;
+				if (diagonals && x > 0) {
+					label = join(label, prev[x - 1]);
+				}
+				label = join(label, prev[x]);
+				if (diagonals && x + 1 < width) {
+					label = join(label, prev[x + 1]);
+				}
+				if (label < 0) {
+					label = labelCount++;
+					stats.init(label, x, y);
+				}
+				cur[x] = label;
+				stats.add(stats.find(label), x, y, colors[x]);
+			}
+
+			// which roots still have pixels in this row
+			int count = 0;
+			for (int x = 0; x < width; x++) {
+				if (cur[x] >= 0) {
+					int root = stats.find(cur[x]);
+					if (remap[root] == -1) {
+						remap[root] = count;
+						nextStats.copy(stats, root, count);
+						count++;
+					}
+					cur[x] = remap[root];
+				}
+			}
+
+			// the rest of the labels of the row above cannot grow any more
+			for (int label = 0; label < prevCount; label++) {
+				if (stats.parent[label] == label && remap[label] == -1) {
+					emit(stats, label);
+				}
+			}
+
+			for (int label = 0; label < labelCount; label++) {
+				remap[label] = -1;
+			}
+			Stats tempStats = stats;
+			stats = nextStats;
+			nextStats = tempStats;
+			int[] temp = prev;
+			prev = cur;
+			cur = temp;
+			prevCount = count;
+		}
+
+		/**
+		 * @param label
+		 *            the label of the pixel so far, -1 for none yet
+		 * @param neighbor
+		 *            the label of a neighbor, -1 for background
+		 * @return the label of the pixel, with the sets of both joined
+		 */
+		private int join(int label, int neighbor) {
+			if (neighbor < 0) {
+				return label;
+			}
+			if (label < 0) {
+				return neighbor;
+			}
+			stats.union(label, neighbor);
+			return label;
+		}
+
+		/**
+		 * Hands on the blobs still open after the last row
+		 */
+		public void finish() {
+			for (int label = 0; label < prevCount; label++) {
+				emit(stats, label);
+			}
+			prevCount = 0;
+		}
+
+		/**
+		 * @param from
+		 *            the stats the label is in
+		 * @param root
+		 *            the label of the finished blob
+		 */
+		private void emit(Stats from, int root) {
+			blobCount++;
+			sink.accept(new Blob(from.size[root], from.left[root], from.top[root], from.right[root],
+					from.bottom[root], from.firstX[root], from.firstY[root], from.sums[root][0],
+					from.sums[root][1], from.sums[root][2], from.sums[root][3], from.sums[root][4]));
+		}
+	}
+
+	/**
+	 * A union-find over labels that keeps the size, bounding box, first pixel
+	 * and the sums of x, y, red, green and blue of every set at its root.
+	 */
+	private static class Stats {
+		private int[] parent;
+		private long[] size;
+		private int[] left;
+		private int[] top;
+		private int[] right;
+		private int[] bottom;
+		private int[] firstX;
+		private int[] firstY;
+		private long[][] sums;
+
+		/**
+		 * @param capacity
+		 *            the most labels in use at once
+		 */
+		public Stats(int capacity) {
+			parent = new int[capacity];
+			size = new long[capacity];
+			left = new int[capacity];
+			top = new int[capacity];
+			right = new int[capacity];
+			bottom = new int[capacity];
+			firstX = new int[capacity];
+			firstY = new int[capacity];
+			sums = new long[capacity][5];
+		}
+
+		/**
+		 * @param label
+		 *            a new label
+		 * @param x
+		 *            the x of its first pixel
+		 * @param y
+		 *            the y of its first pixel
+		 */
+		public void init(int label, int x, int y) {
+			parent[label] = label;
+			size[label] = 0;
+			left[label] = right[label] = firstX[label] = x;
+			top[label] = bottom[label] = firstY[label] = y;
+			Arrays.fill(sums[label], 0);
+		}
+
+		/**
+		 * @param root
+		 *            the root of the set the pixel joins
+		 * @param x
+		 *            the x of the pixel
+		 * @param y
+		 *            the y of the pixel
+		 * @param rgb
+		 *            the color of the pixel
+		 */
+		public void add(int root, int x, int y, int rgb) {
+			size[root]++;
+			sums[root][0] += x;
+			sums[root][1] += y;
+			sums[root][2] += (rgb >> 16) & 0xff;
+			sums[root][3] += (rgb >> 8) & 0xff;
+			sums[root][4] += rgb & 0xff;
+			left[root] = Math.min(left[root], x);
+			right[root] = Math.max(right[root], x);
+			bottom[root] = Math.max(bottom[root], y);
+		}
+
+		/**
+		 * @param from
+		 *            the stats to copy from
+		 * @param root
+		 *            the label to copy
+		 * @param label
+		 *            the label to copy it to, which becomes a root
+		 */
+		public void copy(Stats from, int root, int label) {
+			parent[label] = label;
+			size[label] = from.size[root];
+			left[label] = from.left[root];
+			top[label] = from.top[root];
+			right[label] = from.right[root];
+			bottom[label] = from.bottom[root];
+			firstX[label] = from.firstX[root];
+			firstY[label] = from.firstY[root];
+			System.arraycopy(from.sums[root], 0, sums[label], 0, sums[label].length);
+		}
+
+		/**
+		 * @param x
+		 *            a label
+		 * @return the root of its set
+		 */
+		public int find(int x) {
+			int root = x;
+			while (parent[root] != root) {
+				root = parent[root];
+			}
+			while (x != root) {
+				int p = parent[x];
+				parent[x] = root;
+				x = p;
+			}
+			return root;
+		}
+
+		/**
+		 * @param a
+		 *            a label
+		 * @param b
+		 *            another label
+		 *
+		 *            Joins the sets of the labels, the larger set's root stays
+		 *            the root.
+		 */
+		public void union(int a, int b) {
+			int rootA = find(a);
+			int rootB = find(b);
+			if (rootA == rootB) {
+				return;
+			}
+			if (size[rootB] > size[rootA]) {
+				int temp = rootA;
+				rootA = rootB;
+				rootB = temp;
+			}
+			parent[rootB] = rootA;
+			size[rootA] += size[rootB];
+			left[rootA] = Math.min(left[rootA], left[rootB]);
+			top[rootA] = Math.min(top[rootA], top[rootB]);
+			right[rootA] = Math.max(right[rootA], right[rootB]);
+			bottom[rootA] = Math.max(bottom[rootA], bottom[rootB]);
+			for (int i = 0; i < sums[rootA].length; i++) {
+				sums[rootA][i] += sums[rootB][i];
+			}
+			if (firstY[rootB] < firstY[rootA] || (firstY[rootB] == firstY[rootA] && firstX[rootB] < firstX[rootA])) {
+				firstX[rootA] = firstX[rootB];
+				firstY[rootA] = firstY[rootB];
+			}
+		}
+	}
+}
@@ -0,0 +1,167 @@
+/**
+ * Generates test images for Benchmark, including the worst cases for each
+ * part of the detector. The blob color is always pure red on white.
+ */
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Random;
+
+public class SyntheticImages {
+	// the color the blobs are drawn in
+	public static final Color BLOB_COLOR = Color.RED;
+
+	private static final int RED = 0xff0000;
+	private static final int WHITE = 0xffffff;
+
+	/**
+	 * @param width
+	 *            the width of the image
+	 * @param height
+	 *            the height of the image
+	 * @param seed
+	 *            the random seed
+	 * @return random colors everywhere, most thresholds give many tiny blobs
+	 */
+	public static BufferedImage noise(int width, int height, long seed) {
+		BufferedImage image = blank(width, height);
+		int[] data = pixels(image);
+		Random random = new Random(seed);
+		for (int i = 0; i < data.length; i++) {
+			data[i] = random.nextInt() & 0xffffff;
+		}
+		return image;
+	}
+
+	/**
+	 * @param width
+	 *            the width of the image
+	 * @param height
+	 *            the height of the image
+	 * @param count
+	 *            the number of circles
+	 * @param seed
+	 *            the random seed
+	 * @return red circles of random size and place on white
+	 */
+	public static BufferedImage circles(int width, int height, int count, long seed) {
+		BufferedImage image = blank(width, height);
+		int[] data = pixels(image);
+		fill(data, WHITE);
+		Random random = new Random(seed);
+		int maxRadius = Math.max(2, Math.min(width, height) / 20);
+		for (int c = 0; c < count; c++) {
+			int cx = random.nextInt(width);
+			int cy = random.nextInt(height);
+			int r = 1 + random.nextInt(maxRadius);
+			for (int y = Math.max(0, cy - r); y <= Math.min(height - 1, cy + r); y++) {
+				for (int x = Math.max(0, cx - r); x <= Math.min(width - 1, cx + r); x++) {
+					if ((x - cx) * (x - cx) + (y - cy) * (y - cy) <= r * r) {
+						data[width * y + x] = RED;
+					}
+				}
+			}
+		}
+		return image;
+	}
+
+	/**
+	 * @param width
+	 *            the width of the image
+	 * @param height
+	 *            the height of the image
+	 * @return a one pixel checkerboard, the most blobs an image can have
+	 */
+	public static BufferedImage checkerboard(int width, int height) {
+		BufferedImage image = blank(width, height);
+		int[] data = pixels(image);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				data[width * y + x] = (x + y) % 2 == 0 ? RED : WHITE;
+			}
+		}
+		return image;
+	}
+
+	/**
+	 * @param width
+	 *            the width of the image
+	 * @param height
+	 *            the height of the image
+	 * @return one blob snaking down the image row by row, the longest paths
+	 *         a find can meet
+	 */
+	public static BufferedImage serpentine(int width, int height) {
+		BufferedImage image = blank(width, height);
+		int[] data = pixels(image);
+		fill(data, WHITE);
+		for (int y = 0; y < height; y += 2) {
+			fill(data, width * y, width * (y + 1), RED);
+			if (y + 1 < height) {
+				// join to the next red row at alternating ends
+				int x = (y / 2) % 2 == 0 ? width - 1 : 0;
+				data[width * (y + 1) + x] = RED;
+			}
+		}
+		return image;
+	}
+
+	/**
+	 * @param width
+	 *            the width of the image
+	 * @param height
+	 *            the height of the image
+	 * @return every pixel the blob color, one blob the size of the image
+	 */
+	public static BufferedImage full(int width, int height) {
+		BufferedImage image = blank(width, height);
+		fill(pixels(image), RED);
+		return image;
+	}
+
+	/**
+	 * @param width
+	 *            the width of the image
+	 * @param height
+	 *            the height of the image
+	 * @return a new RGB image
+	 */
+	private static BufferedImage blank(int width, int height) {
+		return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+	}
+
+	/**
+	 * @param image
+	 *            an RGB image
+	 * @return the pixels backing the image
+	 */
+	private static int[] pixels(BufferedImage image) {
+		return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+	}
+
+	/**
+	 * @param data
+	 *            the pixels
+	 * @param rgb
+	 *            the color to fill them with
+	 */
+	private static void fill(int[] data, int rgb) {
+		fill(data, 0, data.length, rgb);
+	}
+
+	/**
+	 * @param data
+	 *            the pixels
+	 * @param from
+	 *            the first pixel to fill
+	 * @param to
+	 *            the pixel after the last one to fill
+	 * @param rgb
+	 *            the color to fill them with
+	 */
+	private static void fill(int[] data, int from, int to, int rgb) {
+		for (int i = from; i < to; i++) {
+			data[i] = rgb;
+		}
+	}
+}
@@ -0,0 +1,358 @@
+/**
+ * Finds the number of blobs and the sizes of the k largest blobs for every
+ * okDist from 0 to 100 in one pass, instead of running Detector once per
+ * distance.
+ *
+ * A pixel only ever joins the foreground as okDist grows, so every pixel
+ * gets the smallest okDist that takes it in, and the pixels are sorted by
+ * it (a counting sort, there are only 101 values). They are then added in
+ * that order and unioned with the neighbors that are already in. After the
+ * last pixel of a distance is added, the sets are exactly the blobs
+ * Detector would find at that distance.
+ *
+ * Every union pushes the new size and root on a heap. Sets only grow, so
+ * an entry whose root has since been joined into another set or has grown
+ * is simply dropped when it comes up. Sets of one pixel never go on the
+ * heap, they are counted instead.
+ */
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+
+public class ThresholdSweep {
+	// the largest value getDifference() can return
+	public static final int MAX_DIST = 100;
+
+	private PixelRows rows;
+	private Color blobColor; // the color of the blob we are detecting
+	private int k; // the number of sizes kept for every distance
+	private Connectivity connectivity = Connectivity.FOUR;
+	private int width;
+	private int height;
+
+	// what the sweep found, by okDist
+	private int[] blobCounts = new int[MAX_DIST + 1];
+	private long[] pixelCounts = new long[MAX_DIST + 1];
+	private int[][] topSizes = new int[MAX_DIST + 1][];
+
+	// sets of more than one pixel as (size << 32 | root), largest on top
+	private long[] heap = new long[16];
+	private int heapSize;
+
+	/**
+	 * @param rows
+	 *            the rows of packed RGB values of the picture
+	 * @param blobColor
+	 *            the color of the blob to be detected
+	 * @param k
+	 *            the number of blob sizes to keep for every distance
+	 */
+	public ThresholdSweep(PixelRows rows, Color blobColor, int k) {
+		if (k < 1) {
+			throw new IllegalArgumentException("! Error: k should be greater than 0, current k=" + k);
+		}
+		this.rows = rows;
+		this.blobColor = blobColor;
+		this.k = k;
+		this.width = rows.getWidth();
+		this.height = rows.getHeight();
+	}
+
+	/**
+	 * @param image
+	 *            the picture, sweep() does not change it
+	 * @param blobColor
+	 *            the color of the blob to be detected
+	 * @param k
+	 *            the number of blob sizes to keep for every distance
+	 */
+	public ThresholdSweep(BufferedImage image, Color blobColor, int k) {
+		this(new RasterRows(image), blobColor, k);
+	}
+
+	/**
+	 * @param imgfile
+	 *            the file of the picture, a jpg, png, etc
+	 * @param blobColor
+	 *            the color of the blob to be detected
+	 * @param k
+	 *            the number of blob sizes to keep for every distance
+	 * @throws IOException
+	 *             if the picture cannot be read
+	 */
+	public ThresholdSweep(String imgfile, Color blobColor, int k) throws IOException {
+		this(read(imgfile), blobColor, k);
+	}
+
+	/**
+	 * @param imgfile
+	 *            the file of the picture
+	 * @return the picture
+	 * @throws IOException
+	 *             if the picture cannot be read
+	 */
+	private static BufferedImage read(String imgfile) throws IOException {
+		BufferedImage image = ImageIO.read(new File(imgfile));
+		if (image == null) {
+			throw new IOException("No reader for " + imgfile);
+		}
+		return image;
+	}
+
+	/**
+	 * @param connectivity
+	 *            which pixels count as neighbors in the next call to sweep(),
+	 *            FOUR by default
+	 */
+	public void setConnectivity(Connectivity connectivity) {
+		if (connectivity == null) {
+			throw new NullPointerException();
+		}
+		this.connectivity = connectivity;
+	}
+
+	/**
+	 * Adds the pixels in order of their distance to blobColor and records
+	 * the blobs after every distance.
+	 */
+	public void sweep() {
+		int n = width * height;
+		byte[] levels = levels();
+
+		// counting sort by level, pixels of the same level stay in raster
+		// order
+		int[] starts = new int[MAX_DIST + 2];
+		for (int p = 0; p < n; p++) {
+			starts[levels[p] + 1]++;
+		}
+		for (int d = 0; d <= MAX_DIST; d++) {
+			starts[d + 1] += starts[d];
+		}
+		int[] order = new int[n];
+		int[] next = Arrays.copyOf(starts, MAX_DIST + 1);
+		for (int p = 0; p < n; p++) {
+			order[next[levels[p]]++] = p;
+		}
+
+		IntDisjointSets ds = new IntDisjointSets(n);
+		heapSize = 0;
+		int blobs = 0;
+		int singles = 0; // blobs of one pixel
+		for (int d = 0; d <= MAX_DIST; d++) {
+			for (int i = starts[d]; i < starts[d + 1]; i++) {
+				int p = order[i];
+				blobs++;
+				singles++;
+				int x = p % width;
+				int y = p / width;
+				for (int dy = -1; dy <= 1; dy++) {
+					for (int dx = -1; dx <= 1; dx++) {
+						if ((dx == 0 && dy == 0) || (connectivity == Connectivity.FOUR && dx != 0 && dy != 0)) {
+							continue;
+						}
+						int qx = x + dx;
+						int qy = y + dy;
+						if (qx < 0 || qx >= width || qy < 0 || qy >= height) {
+							continue;
+						}
+						// a neighbor is in if its level is lower, or the same
+						// and it came first
+						int q = qy * width + qx;
+						if (levels[q] > d || (levels[q] == d && q > p)) {
+							continue;
+						}
+						int a = ds.find(p);
+						int b = ds.find(q);
+						if (a != b) {
+							singles -= (ds.size(a) == 1 ? 1 : 0) + (ds.size(b) == 1 ? 1 : 0);
+							int root = ds.union(a, b);
+							blobs--;
+							push(((long) ds.size(root) << 32) | root);
+						}
+					}
+				}
+			}
+			blobCounts[d] = blobs;
+			pixelCounts[d] = starts[d + 1];
+			topSizes[d] = top(ds, blobs, singles);
+		}
+	}
+
+	/**
+	 * @return the smallest okDist every pixel counts at, one byte per pixel
+	 *         in row-major order
+	 */
+	private byte[] levels() {
+		// the level of every sum of squared channel differences, using the
+		// same bounds threshMask() uses
+		byte[] levelOf = new byte[3 * 255 * 255 + 1];
+		int from = 0;
+		for (int d = 0; d <= MAX_DIST; d++) {
+			int bound = Detector.maxSquaredDistance(d);
+			for (int sum = from; sum <= bound; sum++) {
+				levelOf[sum] = (byte) d;
+			}
+			from = Math.max(from, bound + 1);
+		}
+		Arrays.fill(levelOf, from, levelOf.length, (byte) MAX_DIST);
+
+		byte[] levels = new byte[width * height];
+		int[] row = new int[width];
+		int red = blobColor.getRed();
+		int green = blobColor.getGreen();
+		int blue = blobColor.getBlue();
+		for (int y = 0; y < height; y++) {
+			rows.read(y, row);
+			int offset = width * y;
+			for (int x = 0; x < width; x++) {
+				int rgb = row[x];
+				int distanceRed = ((rgb >> 16) & 0xff) - red;
+				int distanceGreen = ((rgb >> 8) & 0xff) - green;
+				int distanceBlue = (rgb & 0xff) - blue;
+				levels[offset + x] = levelOf[distanceRed * distanceRed + distanceGreen * distanceGreen
+						+ distanceBlue * distanceBlue];
+			}
+		}
+		return levels;
+	}
+
+	/**
+	 * @param ds
+	 *            the sets so far
+	 * @param blobs
+	 *            the number of sets
+	 * @param singles
+	 *            the number of sets of one pixel
+	 * @return the sizes of the k largest sets, largest first
+	 */
+	private int[] top(IntDisjointSets ds, int blobs, int singles) {
+		int[] sizes = new int[Math.min(k, blobs)];
+		long[] kept = new long[sizes.length];
+		int count = 0;
+		while (count < sizes.length && heapSize > 0) {
+			long entry = pop();
+			int root = (int) entry;
+			int size = (int) (entry >>> 32);
+			// drop entries of sets that were joined or have grown since
+			if (ds.find(root) == root && ds.size(root) == size) {
+				kept[count] = entry;
+				sizes[count++] = size;
+			}
+		}
+		for (int i = 0; i < count; i++) {
+			push(kept[i]);
+		}
+		// the rest are single pixels
+		while (count < sizes.length && singles-- > 0) {
+			sizes[count++] = 1;
+		}
+		return sizes;
+	}
+
+	/**
+	 * @param entry
+	 *            a set as (size << 32 | root)
+	 */
+	private void push(long entry) {
+		if (heapSize == heap.length) {
+			heap = Arrays.copyOf(heap, 2 * heap.length);
+		}
+		int i = heapSize++;
+		while (i > 0 && heap[(i - 1) / 2] < entry) {
+			heap[i] = heap[(i - 1) / 2];
+			i = (i - 1) / 2;
+		}
+		heap[i] = entry;
+	}
+
+	/**
+	 * @return the largest entry, which is taken off the heap
+	 */
+	private long pop() {
+		long top = heap[0];
+		long last = heap[--heapSize];
+		int i = 0;
+		while (2 * i + 1 < heapSize) {
+			int child = 2 * i + 1;
+			if (child + 1 < heapSize && heap[child + 1] > heap[child]) {
+				child++;
+			}
+			if (heap[child] <= last) {
+				break;
+			}
+			heap[i] = heap[child];
+			i = child;
+		}
+		heap[i] = last;
+		return top;
+	}
+
+	/**
+	 * @param okDist
+	 *            a distance from 0 to MAX_DIST
+	 * @return the number of blobs Detector finds at that distance
+	 */
+	public int getBlobCount(int okDist) {
+		return blobCounts[okDist];
+	}
+
+	/**
+	 * @param okDist
+	 *            a distance from 0 to MAX_DIST
+	 * @return the number of pixels that count as the color at that distance
+	 */
+	public long getPixelCount(int okDist) {
+		return pixelCounts[okDist];
+	}
+
+	/**
+	 * @param okDist
+	 *            a distance from 0 to MAX_DIST
+	 * @return the sizes of the k largest blobs at that distance, largest
+	 *         first, fewer if there are fewer blobs
+	 */
+	public int[] getTopSizes(int okDist) {
+		return topSizes[okDist].clone();
+	}
+
+	/**
+	 * Prints one line per distance: the number of blobs, the pixels that
+	 * count as the color and the sizes of the k largest blobs.
+	 */
+	public void outputResults() {
+		for (int d = 0; d <= MAX_DIST; d++) {
+			StringBuilder line = new StringBuilder();
+			line.append("d=").append(d).append(": ").append(blobCounts[d]).append(" blobs, ")
+					.append(pixelCounts[d]).append(" pixels");
+			for (int i = 0; i < topSizes[d].length; i++) {
+				line.append(i == 0 ? ", largest " : " ").append(topSizes[d][i]);
+			}
+			System.out.println(line);
+		}
+	}
+
+	/**
+	 * @param args
+	 *            command line arguments Main method
+	 */
+	public static void main(String[] args) throws IOException {
+		BufferedImage image = args.length > 0 ? ImageIO.read(new File(args[0]))
+				: SyntheticImages.circles(400, 300, 30, 1);
+		ThresholdSweep sweep = new ThresholdSweep(image, SyntheticImages.BLOB_COLOR, 3);
+		sweep.sweep();
+		sweep.outputResults();
+
+		// every distance agrees with a Detector run at that distance
+		Detector detector = new Detector(image, SyntheticImages.BLOB_COLOR, 30);
+		detector.detect();
+		StringBuilder sizes = new StringBuilder();
+		for (Blob blob : detector.getBlobs(3)) {
+			sizes.append(" ").append(blob.getSize());
+		}
+		System.out.println("Detector at d=30: " + detector.getBlobCount() + " blobs, largest" + sizes);
+	}
+}
@@ -0,0 +1,180 @@
+/**
+ * Numbers the pixels of a mask tile by tile, leaving out the tiles with no
+ * foreground at all. The picture is cut into TILE_SIZE x TILE_SIZE tiles, the
+ * tiles with a FOREGROUND pixel are numbered in raster order, and pixel
+ * (x, y) of tile number c is element
+ *
+ * c * TILE_SIZE^2 + TILE_SIZE * (y % TILE_SIZE) + x % TILE_SIZE
+ *
+ * so a disjoint sets over the elements needs no room for the empty parts of
+ * a sparse picture. The elements of a tile are a range of their own, so
+ * tiles can be labeled at the same time without sharing any element. Tiles
+ * on the right and bottom edges may be smaller than TILE_SIZE, and their
+ * elements past the edge have no pixel.
+ */
+import java.util.Arrays;
+
+public class TileIds {
+	// the width and height of a tile, 64
+	public static final int TILE_SHIFT = 6;
+	public static final int TILE_SIZE = 1 << TILE_SHIFT;
+	private static final int TILE_MASK = TILE_SIZE - 1;
+
+	private int width;
+	private int height;
+	private int tilesX; // tiles in a row of tiles
+	private int[] numbers = new int[0]; // the number of every tile, -1 if empty
+	private int[] tiles = new int[0]; // the tile of every number
+	private int count; // the number of tiles with foreground
+
+	/**
+	 * @param mask
+	 *            the thresholded picture, one byte per pixel in row-major
+	 *            order
+	 * @param width
+	 *            the width of the picture
+	 * @param height
+	 *            the height of the picture
+	 *
+	 *            Finds the tiles with foreground and numbers them. The arrays
+	 *            are kept when they are big enough, so one TileIds can be
+	 *            used for picture after picture. A row of a tile is only read
+	 *            up to its first FOREGROUND pixel, and not at all once the tile
+	 *            is known to have one.
+	 */
+	public void update(byte[] mask, int width, int height) {
+		if (mask.length < width * height) {
+			throw new IllegalArgumentException();
+		}
+		this.width = width;
+		this.height = height;
+		tilesX = (width + TILE_MASK) >>> TILE_SHIFT;
+		int tilesY = (height + TILE_MASK) >>> TILE_SHIFT;
+		if (numbers.length < tilesX * tilesY) {
+			numbers = new int[tilesX * tilesY];
+			tiles = new int[tilesX * tilesY];
+		}
+		Arrays.fill(numbers, 0, tilesX * tilesY, -1);
+		for (int y = 0; y < height; y++) {
+			int offset = width * y;
+			int tileRow = (y >>> TILE_SHIFT) * tilesX;
+			for (int tx = 0; tx < tilesX; tx++) {
+				if (numbers[tileRow + tx] >= 0) {
+					continue;
+				}
+				int end = offset + Math.min(width, (tx + 1) << TILE_SHIFT);
+				for (int i = offset + (tx << TILE_SHIFT); i < end; i++) {
+					if (mask[i] == Detector.FOREGROUND) {
+						numbers[tileRow + tx] = 0;
+						break;
+					}
+				}
+			}
+		}
+		count = 0;
+		for (int t = 0; t < tilesX * tilesY; t++) {
+			if (numbers[t] >= 0) {
+				tiles[count] = t;
+				numbers[t] = count++;
+			}
+		}
+		if ((long) count << (2 * TILE_SHIFT) > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("! Error: " + count + " tiles have more pixels than int ids can number");
+		}
+	}
+
+	/**
+	 * @return the number of tiles with foreground
+	 */
+	public int getTileCount() {
+		return count;
+	}
+
+	/**
+	 * @return the number of elements, TILE_SIZE^2 for every tile with
+	 *         foreground
+	 */
+	public int getElementCount() {
+		return count << (2 * TILE_SHIFT);
+	}
+
+	/**
+	 * @param c
+	 *            the number of a tile
+	 * @return the x of its left column
+	 */
+	public int getTileX(int c) {
+		return (tiles[c] % tilesX) << TILE_SHIFT;
+	}
+
+	/**
+	 * @param c
+	 *            the number of a tile
+	 * @return the y of its top row
+	 */
+	public int getTileY(int c) {
+		return (tiles[c] / tilesX) << TILE_SHIFT;
+	}
+
+	/**
+	 * @param x
+	 *            the column of a pixel
+	 * @param y
+	 *            the row of the pixel
+	 * @return the element of the pixel, or -1 if its tile has no foreground
+	 */
+	public int toElement(int x, int y) {
+		int c = numbers[(y >>> TILE_SHIFT) * tilesX + (x >>> TILE_SHIFT)];
+		if (c < 0) {
+			return -1;
+		}
+		return (c << (2 * TILE_SHIFT)) | ((y & TILE_MASK) << TILE_SHIFT) | (x & TILE_MASK);
+	}
+
+	/**
+	 * @param element
+	 *            an element
+	 * @return the id of its pixel, width * y + x, or -1 if it is past the
+	 *         edge of the picture
+	 */
+	public int toPixel(int element) {
+		int t = tiles[element >>> (2 * TILE_SHIFT)];
+		int x = ((t % tilesX) << TILE_SHIFT) | (element & TILE_MASK);
+		int y = ((t / tilesX) << TILE_SHIFT) | ((element >>> TILE_SHIFT) & TILE_MASK);
+		if (x >= width || y >= height) {
+			return -1;
+		}
+		return width * y + x;
+	}
+
+	/**
+	 * @return the width of the picture
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return the height of the picture
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @param args
+	 *            command line arguments Main method
+	 */
+	public static void main(String[] args) {
+		// a 200x100 picture with foreground in two tiles
+		byte[] mask = new byte[200 * 100];
+		mask[200 * 10 + 150] = Detector.FOREGROUND;
+		mask[200 * 70 + 5] = Detector.FOREGROUND;
+		TileIds ids = new TileIds();
+		ids.update(mask, 200, 100);
+		System.out.println(ids.getTileCount()); // should be 2
+		int element = ids.toElement(5, 70);
+		System.out.println(element + " " + ids.toPixel(element)); // should be 4485 14005
+		System.out.println(ids.toElement(0, 0)); // should be -1
+	}
+}
@@ -0,0 +1,251 @@
+/**
+ * Keeps the k best of a stream of (size, order, id) entries in a bounded
+ * min-heap of primitive arrays, O(log k) per entry and no boxing. An entry
+ * is better if it is larger, and of two entries of the same size the one
+ * with the smaller order is better (Detector uses the first pixel of a blob
+ * in raster order). The heap starts small and grows up to k as entries
+ * arrive, so a k far above the number of entries costs nothing.
+ */
+import java.util.Arrays;
+
+public class TopK {
+	private static final int INITIAL_CAPACITY = 16;
+	private int k;
+	private int count;
+	// the heap, the worst entry kept is at index 0
+	private long[] sizes;
+	private long[] orders;
+	private long[] ids;
+
+	/**
+	 * @param k
+	 *            the number of entries to keep
+	 */
+	public TopK(int k) {
+		if (k < 1) {
+			throw new IllegalArgumentException("! Error: k should be greater than 0, current k=" + k);
+		}
+		this.k = k;
+		int capacity = Math.min(k, INITIAL_CAPACITY);
+		sizes = new long[capacity];
+		orders = new long[capacity];
+		ids = new long[capacity];
+	}
+
+	/**
+	 * @param size
+	 *            the size of the entry
+	 * @param order
+	 *            breaks ties between entries of the same size, smaller wins
+	 * @param id
+	 *            the id of the entry
+	 * @return true if the entry is kept, which drops the worst entry if k
+	 *         entries were kept already
+	 */
+	public boolean offer(long size, long order, long id) {
+		if (count < k) {
+			if (count == sizes.length) {
+				grow();
+			}
+			set(count, size, order, id);
+			siftUp(count);
+			count++;
+			return true;
+		} else if (worse(0, size, order)) {
+			set(0, size, order, id);
+			siftDown(0, count);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return the id of the worst entry kept, the one the next kept entry
+	 *         drops once k entries are kept. Not for use after sort()
+	 */
+	public long getWorstId() {
+		assertIsEntry(0);
+		return ids[0];
+	}
+
+	/**
+	 * Doubles the room for entries, but never past k
+	 */
+	private void grow() {
+		int capacity = (int) Math.min(k, 2L * sizes.length);
+		sizes = Arrays.copyOf(sizes, capacity);
+		orders = Arrays.copyOf(orders, capacity);
+		ids = Arrays.copyOf(ids, capacity);
+	}
+
+	/**
+	 * Sorts the entries kept from best to worst. Entries can no longer be
+	 * offered afterwards. O(k log k)
+	 */
+	public void sort() {
+		// heap sort: the worst entry moves to the end each time
+		for (int end = count - 1; end > 0; end--) {
+			swap(0, end);
+			siftDown(0, end);
+		}
+	}
+
+	/**
+	 * @return the number of entries kept, at most k
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * @param i
+	 *            the rank of an entry, 0 is the best once sorted
+	 * @return the id of the entry
+	 */
+	public long getId(int i) {
+		assertIsEntry(i);
+		return ids[i];
+	}
+
+	/**
+	 * @param i
+	 *            the rank of an entry, 0 is the best once sorted
+	 * @return the size of the entry
+	 */
+	public long getSize(int i) {
+		assertIsEntry(i);
+		return sizes[i];
+	}
+
+	/**
+	 * @param i
+	 *            the rank of an entry, 0 is the best once sorted
+	 * @return the order of the entry
+	 */
+	public long getOrder(int i) {
+		assertIsEntry(i);
+		return orders[i];
+	}
+
+	/**
+	 * @param i
+	 *            the index in question
+	 */
+	private void assertIsEntry(int i) {
+		if (i < 0 || i >= count) {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	/**
+	 * @param i
+	 *            an index in the heap
+	 * @param size
+	 *            the size of another entry
+	 * @param order
+	 *            the order of another entry
+	 * @return true if the entry at i is worse than the other entry
+	 */
+	private boolean worse(int i, long size, long order) {
+		return sizes[i] < size || (sizes[i] == size && orders[i] > order);
+	}
+
+	/**
+	 * @param i
+	 *            an index in the heap
+	 * @param j
+	 *            another index in the heap
+	 * @return true if the entry at i is worse than the entry at j
+	 */
+	private boolean worse(int i, int j) {
+		return worse(i, sizes[j], orders[j]);
+	}
+
+	/**
+	 * @param i
+	 *            the index of the entry moving up
+	 */
+	private void siftUp(int i) {
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (!worse(i, parent)) {
+				return;
+			}
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	/**
+	 * @param i
+	 *            the index of the entry moving down
+	 * @param end
+	 *            the end of the heap
+	 */
+	private void siftDown(int i, int end) {
+		while (2 * i + 1 < end) {
+			int child = 2 * i + 1;
+			if (child + 1 < end && worse(child + 1, child)) {
+				child++;
+			}
+			if (!worse(child, i)) {
+				return;
+			}
+			swap(i, child);
+			i = child;
+		}
+	}
+
+	/**
+	 * @param i
+	 *            the index to write
+	 * @param size
+	 *            the size of the entry
+	 * @param order
+	 *            the order of the entry
+	 * @param id
+	 *            the id of the entry
+	 */
+	private void set(int i, long size, long order, long id) {
+		sizes[i] = size;
+		orders[i] = order;
+		ids[i] = id;
+	}
+
+	/**
+	 * @param i
+	 *            an index in the heap
+	 * @param j
+	 *            another index in the heap
+	 */
+	private void swap(int i, int j) {
+		long size = sizes[i];
+		long order = orders[i];
+		long id = ids[i];
+		set(i, sizes[j], orders[j], ids[j]);
+		set(j, size, order, id);
+	}
+
+	/**
+	 * @param args
+	 *            command line arguments Main method
+	 */
+	public static void main(String[] args) {
+		TopK best = new TopK(3);
+		best.offer(5, 0, 100);
+		best.offer(9, 1, 101);
+		best.offer(1, 2, 102);
+		best.offer(9, 0, 103);
+		best.offer(7, 3, 104);
+		best.sort();
+		for (int i = 0; i < best.size(); i++) {
+			System.out.println(best.getId(i) + ": " + best.getSize(i)); // should be 103, 101, 104
+		}
+		TopK all = new TopK(Integer.MAX_VALUE);
+		for (int i = 0; i < 100; i++) {
+			all.offer(i % 7, i, i);
+		}
+		all.sort();
+		System.out.println(all.size() + " " + all.getId(0)); // should be 100 6
+	}
+}
@@ -0,0 +1,15 @@
+/**
+ * The ways the disjoint sets classes can decide which root survives a union.
+ * Set sizes are tracked either way.
+ */
+public enum UnionStrategy {
+	/**
+	 * the root of the larger set becomes the new root
+	 */
+	SIZE,
+
+	/**
+	 * the root of the taller tree becomes the new root
+	 */
+	RANK
+}